@@ -1,6 +1,7 @@
 package client.commandline;
 
 import client.Lab5Client;
+import client.net.StreamedResult;
 import common.commandline.Command;
 import common.commandline.CommandLineHandler;
 import common.commandline.CommandRegistry;
@@ -16,7 +17,9 @@ public final class CommandLineHandlerClient extends CommandLineHandler {
         super();
         CommandRegistry.registerCommands(new InfoCommand(), new ShowCommand(), new AddCommand(), new AddIfMaxCommand(),
                 new AddIfMinCommand(), new ClearCommand(), new FilterContainsNameCommand(), new PrintFieldDescendingLocationCommand(),
-                new RemoveByIdCommand(), new SumOfHeightCommand(), new UpdateCommand());
+                new RemoveByIdCommand(), new SumOfHeightCommand(), new UpdateCommand(), new StatsCommand(),
+                new ShowMineCommand(), new CountMineCommand(), new ShowNextCommand(), new ImportCommand(),
+                new ExportCommand());
     }
 
     public static CommandLineHandler getClientCommandLine() {
@@ -34,11 +37,15 @@ public final class CommandLineHandlerClient extends CommandLineHandler {
         if (objArgs == null) return;
         CommandResult result = command.isClientOnly() ? command.execute(objArgs) : executeOnServer(command, objArgs);
         PrintStream ps = result.getResponse() == DefaultResponse.OK ? System.out : System.err;
-        ps.println(result.getValue());
+        ps.println(result instanceof StreamedResult ? "" : result.getValue());
         updateHistory(alias);
     }
 
     public static CommandResult executeOnServer(Command command, Object[] args) {
-        return Lab5Client.UDP.send(command, args);
+        return Lab5Client.UDP.send(command, args, (response, text) -> {
+            PrintStream ps = response == DefaultResponse.OK ? System.out : System.err;
+            ps.print(text);
+            ps.flush();
+        });
     }
 }
\ No newline at end of file
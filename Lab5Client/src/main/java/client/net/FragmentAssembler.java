@@ -0,0 +1,88 @@
+package client.net;
+
+import common.net.protocol.Fragment;
+
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+
+/**
+ * Класс сборки фрагментированного сообщения. Хранит полученные фрагменты, сообщает номера
+ * недостающих и передает слушателю данные, как только они становятся непрерывными от начала сообщения
+ */
+public class FragmentAssembler {
+
+    private final int messageId;
+    private final byte[][] fragments;
+    private int received, contiguous;
+    private long size;
+    private Consumer<ByteBuffer> listener;
+
+    public FragmentAssembler(int messageId, int total) {
+        this.messageId = messageId;
+        this.fragments = new byte[total][];
+    }
+
+    public void setListener(Consumer<ByteBuffer> listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Добавляет фрагмент, полезные данные фрагмента копируются
+     *
+     * @param fragment Полученный фрагмент
+     * @return true, если фрагмент относится к этому сообщению и не был получен ранее
+     */
+    public boolean add(Fragment fragment) {
+        if (fragment.getMessageId() != messageId || fragment.getTotal() != fragments.length) return false;
+        int seq = fragment.getSeq();
+        if (fragments[seq] != null) return false;
+        ByteBuffer payload = fragment.getPayload();
+        byte[] bytes = new byte[payload.remaining()];
+        payload.get(bytes);
+        fragments[seq] = bytes;
+        received++;
+        size += bytes.length;
+        while (contiguous < fragments.length && fragments[contiguous] != null) {
+            if (listener != null) listener.accept(ByteBuffer.wrap(fragments[contiguous]).asReadOnlyBuffer());
+            contiguous++;
+        }
+        return true;
+    }
+
+    public boolean isComplete() {
+        return received == fragments.length;
+    }
+
+    /**
+     * @param limit Наибольшее количество возвращаемых номеров
+     * @return Номера недостающих фрагментов по возрастанию
+     */
+    public int[] missing(int limit) {
+        int[] result = new int[Math.min(limit, fragments.length - received)];
+        int count = 0;
+        for (int seq = contiguous; seq < fragments.length && count < result.length; seq++)
+            if (fragments[seq] == null) result[count++] = seq;
+        return result;
+    }
+
+    public ByteBuffer assemble() {
+        if (!isComplete()) throw new IllegalStateException("Сообщение " + messageId + " получено не полностью");
+        if (size > Integer.MAX_VALUE) throw new IllegalStateException("Сообщение " + messageId + " слишком велико");
+        ByteBuffer result = ByteBuffer.allocate((int) size);
+        for (byte[] fragment : fragments) result.put(fragment);
+        result.flip();
+        return result;
+    }
+
+    public int getMessageId() {
+        return messageId;
+    }
+
+    public int getReceived() {
+        return received;
+    }
+
+    public int getTotal() {
+        return fragments.length;
+    }
+}
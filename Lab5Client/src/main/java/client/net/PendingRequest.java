@@ -0,0 +1,123 @@
+package client.net;
+
+import common.commandline.response.CommandResult;
+import common.net.protocol.Fragment;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Класс запроса, отправленного на сервер и ожидающего ответа. Хранит закодированный запрос
+ * для повторной отправки, срок ожидания ответа и состояние сборки фрагментированного результата.
+ * Моменты времени измеряются {@link System#nanoTime()}, таймауты задаются в миллисекундах
+ */
+class PendingRequest {
+
+    private final int requestId;
+    private final ByteBuffer request;
+    private final ResultStream stream;
+    private final CompletableFuture<CommandResult> future = new CompletableFuture<>();
+    private long sentAt, deadline, timeout;
+    private int attempts;
+    private boolean retransmitted, answered;
+    private FragmentAssembler assembler;
+    private ResultStreamDecoder decoder;
+
+    PendingRequest(int requestId, ByteBuffer request, ResultStream stream, long timeout) {
+        this.requestId = requestId;
+        this.request = request.asReadOnlyBuffer();
+        this.stream = stream;
+        this.timeout = timeout;
+    }
+
+    int getRequestId() {
+        return requestId;
+    }
+
+    ByteBuffer getRequest() {
+        return request.duplicate();
+    }
+
+    CompletableFuture<CommandResult> getFuture() {
+        return future;
+    }
+
+    long getDeadline() {
+        return deadline;
+    }
+
+    FragmentAssembler getAssembler() {
+        return assembler;
+    }
+
+    boolean isRetransmitted() {
+        return retransmitted;
+    }
+
+    int getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * Отмечает отправку запроса, повторная отправка удваивает таймаут
+     */
+    void onSent(long now) {
+        if (sentAt != 0) {
+            retransmitted = true;
+            attempts++;
+            timeout = RttEstimator.clamp(timeout * 2);
+        }
+        sentAt = now;
+        deadline = now + TimeUnit.MILLISECONDS.toNanos(timeout);
+    }
+
+    /**
+     * Отмечает запрос недостающих фрагментов
+     */
+    void onNack(long now, long timeout) {
+        attempts++;
+        deadline = now + TimeUnit.MILLISECONDS.toNanos(timeout);
+    }
+
+    /**
+     * Отмечает получение первой датаграммы ответа
+     *
+     * @return Время приема-передачи в миллисекундах или -1, если замер не годится для оценки
+     */
+    double onAnswer(long now) {
+        if (answered) return -1;
+        answered = true;
+        return retransmitted ? -1 : (now - sentAt) / 1e6;
+    }
+
+    /**
+     * Добавляет фрагмент результата
+     *
+     * @return true, если фрагмент новый
+     */
+    boolean addFragment(Fragment fragment, long now, long timeout) {
+        if (assembler == null) {
+            assembler = new FragmentAssembler(fragment.getMessageId(), fragment.getTotal());
+            if (stream != null) {
+                decoder = new ResultStreamDecoder(stream);
+                assembler.setListener(decoder::feed);
+            }
+        }
+        if (!assembler.add(fragment)) return false;
+        attempts = 0;
+        deadline = now + TimeUnit.MILLISECONDS.toNanos(timeout);
+        return true;
+    }
+
+    /**
+     * Освобождает ресурсы потокового декодирования, если результат так и не был получен
+     */
+    void release() {
+        if (decoder != null) decoder.end();
+    }
+
+    boolean isStreamed() {
+        return decoder != null && decoder.isStreaming();
+    }
+}
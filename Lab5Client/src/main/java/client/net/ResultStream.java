@@ -0,0 +1,10 @@
+package client.net;
+
+import common.commandline.response.Response;
+
+/**
+ * Интерфейс получателя текста результата, выводимого по мере получения фрагментов
+ */
+public interface ResultStream {
+    void onText(Response response, String text);
+}
@@ -0,0 +1,159 @@
+package client.net;
+
+import common.commandline.response.Response;
+import common.net.protocol.BinaryCodec;
+import common.net.protocol.Envelope;
+import common.net.protocol.Protocol;
+import common.net.protocol.WireFormat;
+
+import java.io.ByteArrayOutputStream;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Класс потокового декодирования кадра результата бинарного протокола. Получает непрерывные
+ * от начала кадра части данных, разбирает заголовок и передает текст результата {@link ResultStream}
+ * по мере поступления, не дожидаясь получения всего кадра. Сжатые полезные данные распаковываются
+ * по мере получения
+ */
+public class ResultStreamDecoder {
+
+    /**
+     * Заголовок полезных данных результата не длиннее этого значения, если он не разобран
+     * после получения стольких байт, данные не являются результатом в бинарном формате
+     */
+    private static final int MAX_PAYLOAD_HEADER_SIZE = 16,
+            INFLATE_CHUNK_SIZE = 8192;
+
+    private final ResultStream stream;
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final CharBuffer chars = CharBuffer.allocate(8192);
+    private ByteArrayOutputStream header = new ByteArrayOutputStream();
+    private ByteBuffer leftover = ByteBuffer.allocate(0);
+    private Inflater inflater;
+    private boolean envelopeParsed;
+    private Response response;
+    private boolean streaming, failed;
+
+    public ResultStreamDecoder(ResultStream stream) {
+        this.stream = stream;
+    }
+
+    /**
+     * @return true, если хотя бы часть текста результата была передана получателю
+     */
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    public void feed(ByteBuffer data) {
+        if (failed) return;
+        if (!envelopeParsed) {
+            while (data.hasRemaining() && header.size() < Envelope.HEADER_SIZE) header.write(data.get());
+            if (!parseEnvelope()) return;
+        }
+        if (inflater == null) {
+            payload(data);
+            return;
+        }
+        byte[] input = new byte[data.remaining()];
+        data.get(input);
+        inflater.setInput(input);
+        byte[] chunk = new byte[INFLATE_CHUNK_SIZE];
+        try {
+            int count;
+            while ((count = inflater.inflate(chunk)) > 0 && !failed)
+                payload(ByteBuffer.wrap(chunk, 0, count));
+        } catch (DataFormatException e) {
+            fail();
+        }
+        if (inflater != null && inflater.finished()) end();
+    }
+
+    /**
+     * Освобождает ресурсы распаковки, вызывается, если сборка результата прервана
+     */
+    public void end() {
+        if (inflater != null) inflater.end();
+        inflater = null;
+    }
+
+    private boolean parseEnvelope() {
+        if (header.size() > 0 && header.toByteArray()[0] != Protocol.MAGIC) {
+            fail();
+            return false;
+        }
+        if (header.size() < Envelope.HEADER_SIZE) return false;
+        try {
+            int flags = Envelope.readResultEnvelope(ByteBuffer.wrap(header.toByteArray()));
+            if (Envelope.formatOf(flags) != WireFormat.BINARY) {
+                // Текст результата доступен только в бинарном формате
+                fail();
+                return false;
+            }
+            if (Envelope.isDeflated(flags)) inflater = new Inflater();
+        } catch (ProtocolException e) {
+            fail();
+            return false;
+        }
+        header.reset();
+        envelopeParsed = true;
+        return true;
+    }
+
+    private void payload(ByteBuffer data) {
+        if (response == null) {
+            while (data.hasRemaining()) header.write(data.get());
+            if (!parsePayloadHeader()) return;
+        }
+        decode(data);
+    }
+
+    private boolean parsePayloadHeader() {
+        ByteBuffer buffer = ByteBuffer.wrap(header.toByteArray());
+        try {
+            response = BinaryCodec.readResultHeader(buffer);
+        } catch (ProtocolException e) {
+            if (header.size() >= MAX_PAYLOAD_HEADER_SIZE) fail();
+            return false;
+        }
+        header = null;
+        leftover = buffer;
+        return true;
+    }
+
+    private void fail() {
+        failed = true;
+        end();
+    }
+
+    private void decode(ByteBuffer data) {
+        ByteBuffer input = data;
+        if (leftover.hasRemaining()) {
+            input = ByteBuffer.allocate(leftover.remaining() + data.remaining());
+            input.put(leftover).put(data).flip();
+        }
+        CoderResult result;
+        do {
+            result = decoder.decode(input, chars, false);
+            chars.flip();
+            if (chars.hasRemaining()) {
+                streaming = true;
+                stream.onText(response, chars.toString());
+            }
+            chars.clear();
+        } while (result.isOverflow());
+        // Незавершенная последовательность UTF-8 дожидается следующей части данных
+        leftover = ByteBuffer.allocate(input.remaining());
+        leftover.put(input).flip();
+    }
+}
@@ -0,0 +1,45 @@
+package client.net;
+
+/**
+ * Класс оценки времени приема-передачи и таймаута повторной передачи по алгоритму RFC 6298:
+ * сглаженное время SRTT и его отклонение RTTVAR обновляются по каждому замеру,
+ * таймаут равен SRTT + 4 * RTTVAR в пределах [{@link #MIN_TIMEOUT_MS}; {@link #MAX_TIMEOUT_MS}]
+ */
+public class RttEstimator {
+
+    public static final long INITIAL_TIMEOUT_MS = 1000,
+                             MIN_TIMEOUT_MS = 100,
+                             MAX_TIMEOUT_MS = 8000;
+
+    private double srtt = -1, rttvar;
+    private long timeout = INITIAL_TIMEOUT_MS;
+
+    /**
+     * Учитывает замер времени приема-передачи. Замеры ответов на повторно отправленные
+     * запросы учитывать нельзя, так как неизвестно, на какую из отправок пришел ответ
+     *
+     * @param rttMillis Время от отправки запроса до получения ответа в миллисекундах
+     */
+    public synchronized void sample(double rttMillis) {
+        if (srtt < 0) {
+            srtt = rttMillis;
+            rttvar = rttMillis / 2;
+        } else {
+            rttvar = 0.75 * rttvar + 0.25 * Math.abs(srtt - rttMillis);
+            srtt = 0.875 * srtt + 0.125 * rttMillis;
+        }
+        timeout = clamp(Math.round(srtt + 4 * rttvar));
+    }
+
+    public synchronized long getTimeout() {
+        return timeout;
+    }
+
+    public synchronized double getSmoothedRtt() {
+        return srtt;
+    }
+
+    public static long clamp(long timeout) {
+        return Math.max(MIN_TIMEOUT_MS, Math.min(MAX_TIMEOUT_MS, timeout));
+    }
+}
@@ -0,0 +1,14 @@
+package client.net;
+
+import common.commandline.response.CommandResult;
+
+/**
+ * Результат, текст которого уже был передан {@link ResultStream} по мере получения фрагментов
+ * и повторно выводиться не должен
+ */
+public class StreamedResult extends CommandResult {
+
+    public StreamedResult(CommandResult result) {
+        super(result.getValue(), result.getResponse());
+    }
+}
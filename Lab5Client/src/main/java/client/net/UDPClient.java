@@ -8,18 +8,27 @@ import common.commandline.commands.LogInCommand;
 import common.commandline.commands.SignUpCommand;
 import common.commandline.response.CommandResult;
 import common.commandline.response.DefaultResponse;
+import common.commandline.response.LogInResult;
+import common.commandline.response.Response;
 import common.commandline.response.SqlResponse;
+import common.net.ConnectionProperties;
+import common.net.protocol.*;
+import common.session.SessionTable;
+import common.store.PeopleStore;
 
 import java.io.*;
 import java.net.*;
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
-import java.nio.channels.DatagramChannel;
+import java.nio.channels.*;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.sql.Connection;
-import java.util.Base64;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class UDPClient {
 
@@ -38,10 +47,18 @@ public class UDPClient {
     private int port;
     private InetSocketAddress address;
     private DatagramChannel datagramChannel;
+    private final WireFormat wireFormat = ConnectionProperties.getWireFormat();
+    private final boolean earlyWriteAck = ConnectionProperties.isEarlyWriteAck();
     private final static String LOCALHOST = "localhost";
+    private Selector selector;
+    private final Map<Integer, PendingRequest> pending = new ConcurrentHashMap<>();
+    private final AtomicInteger requestIds = new AtomicInteger(new Random().nextInt());
+    private final RttEstimator rtt = new RttEstimator();
+    private volatile int capabilities;
+    private volatile long sessionToken = SessionTable.NO_SESSION;
+    private volatile String login, passwordMD5;
     private final static int BUFFER_SIZE = 65_535,
-            TIMES_TO_TRY_READ = 10,
-            READ_ATTEMPT_DELAY_MS = 500;
+            MAX_RETRANSMISSIONS = 5;
 
     public UDPClient(int port) {
         this.port = port;
@@ -57,8 +74,11 @@ public class UDPClient {
             if (hostname == null) hostname = LOCALHOST;
             datagramChannel = DatagramChannel.open();
             address = new InetSocketAddress(hostname, port);
+            datagramChannel.setOption(StandardSocketOptions.SO_RCVBUF, ConnectionProperties.getReceiveBufferSize());
             datagramChannel.bind(new InetSocketAddress(0));
             datagramChannel.configureBlocking(false);
+            selector = Selector.open();
+            datagramChannel.register(selector, SelectionKey.OP_READ);
             if (address.isUnresolved()) {
                 System.err.println("Адреса " + hostname + " не существует, укажите другой адрес");
                 System.exit(-1);
@@ -70,9 +90,31 @@ public class UDPClient {
             System.err.println("Что-то пошло не так при соединении с сервером");
             System.exit(-1);
         }
+        startReceiver();
+        negotiate();
         this.logIn();
     }
 
+    /**
+     * Согласовывает с сервером возможности протокола, если сервер не ответил,
+     * дополнительные возможности не используются
+     */
+    private void negotiate() {
+        int offered = ConnectionProperties.isCompressionEnabled() ? Hello.SUPPORTED : 0;
+        if (offered == 0) return;
+        int requestId = nextRequestId();
+        ByteBuffer request = ByteBuffer.allocate(Protocol.HEADER_SIZE + Integer.BYTES + 5);
+        new Hello(requestId, offered).write(new BinaryWriter(request));
+        request.flip();
+        try {
+            CommandResult result = send(requestId, request, null).get();
+            if (result.getResponse() != DefaultResponse.OK)
+                System.err.println("Сервер не ответил на согласование возможностей, сжатие не используется");
+        } catch (InterruptedException | ExecutionException e) {
+            System.err.println("Согласование возможностей было прервано, сжатие не используется");
+        }
+    }
+
     private void logIn() {
         CommandLineHandler cmd = CommandLineHandlerClient.getClientCommandLine();
         String signUpAnswer = cmd.awaitInput("Имеется ли у вас аккаунт? (Y - да, N - нет):");
@@ -85,15 +127,32 @@ public class UDPClient {
             login = cmd.awaitInput("Введите логин:", "Логин не может быть пустым", s -> !s.isEmpty());
             String password = cmd.awaitPassword("Введите пароль:");
             String passwordMD5 = encodePassword(password);
-            Command logIn = new LogInCommand();
-            Object[] args = new Object[]{login, passwordMD5, PlaceHolder.of(Connection.class)};
-            result = this.send(logIn, args);
+            try {
+                result = authenticate(login, passwordMD5).get();
+            } catch (InterruptedException | ExecutionException e) {
+                result = new CommandResult("Что-то пошло не так при получении результата", DefaultResponse.UNKNOWN);
+            }
             System.out.println(result.getValue());
         } while (result.getResponse() != SqlResponse.OK);
         CommandLineHandler.setUser(login);
         System.out.println("Вход выполнен, добро пожаловать, " + login);
     }
 
+    /**
+     * Выполняет вход и запоминает выданный сервером токен сессии вместе с данными для повторного входа
+     */
+    private CompletableFuture<CommandResult> authenticate(String login, String passwordMD5) {
+        Object[] args = new Object[]{login, passwordMD5, PlaceHolder.of(PeopleStore.class), PlaceHolder.of(SessionTable.class)};
+        return sendOnce(new LogInCommand(), args, null).thenApply(result -> {
+            if (result.getResponse() == SqlResponse.OK && result instanceof LogInResult) {
+                sessionToken = ((LogInResult) result).getToken();
+                this.login = login;
+                this.passwordMD5 = passwordMD5;
+            }
+            return result;
+        });
+    }
+
     private void signUp() {
         CommandLineHandler cmd = CommandLineHandlerClient.getClientCommandLine();
         System.out.println("Регистрация нового пользователя");
@@ -103,7 +162,7 @@ public class UDPClient {
             String password = cmd.awaitPassword("Введите пароль:");
             String passwordMD5 = encodePassword(password);
             Command signUp = new SignUpCommand();
-            Object[] args = new Object[]{login, passwordMD5, PlaceHolder.of(Connection.class)};
+            Object[] args = new Object[]{login, passwordMD5, PlaceHolder.of(PeopleStore.class)};
             result = this.send(signUp, args);
             System.out.println(result.getValue());
         } while (result.getResponse() != SqlResponse.OK);
@@ -120,6 +179,7 @@ public class UDPClient {
 
     public void disconnect() {
         try {
+            selector.close();
             datagramChannel.close();
         } catch (IOException e) {
             System.err.println("Что-то пошло не так во время разрыва соединения с сервером");
@@ -127,48 +187,216 @@ public class UDPClient {
     }
 
     public CommandResult send(Command command, Object[] args) {
-        try (ByteArrayOutputStream byteOutputStream = new ByteArrayOutputStream(BUFFER_SIZE)) {
-            ObjectOutputStream objectOutputStream = new ObjectOutputStream(byteOutputStream);
-            objectOutputStream.writeObject(command);
-            objectOutputStream.writeObject(args);
-            ByteBuffer buffer = ByteBuffer.wrap(byteOutputStream.toByteArray());
-            datagramChannel.send(buffer, address);
+        return send(command, args, null);
+    }
+
+    /**
+     * Отправляет команду на сервер и ожидает результат, текст большого фрагментированного
+     * результата передается stream по мере получения фрагментов
+     *
+     * @param command Команда
+     * @param args Аргументы команды
+     * @param stream Получатель текста результата, может быть null
+     * @return Результат выполнения команды, {@link StreamedResult} если текст уже был передан stream
+     */
+    public CommandResult send(Command command, Object[] args, ResultStream stream) {
+        try {
+            return sendAsync(command, args, stream).get();
+        } catch (InterruptedException e) {
+            return new CommandResult("Получение данных было прервано", DefaultResponse.UNKNOWN);
+        } catch (ExecutionException e) {
+            return new CommandResult("Что-то пошло не так при получении результата", DefaultResponse.UNKNOWN);
+        }
+    }
+
+    public CompletableFuture<CommandResult> sendAsync(Command command, Object[] args) {
+        return sendAsync(command, args, null);
+    }
+
+    /**
+     * Отправляет команду на сервер, не дожидаясь ответа. Одновременно может ожидаться
+     * несколько ответов, они сопоставляются с запросами по идентификатору запроса,
+     * запоздавшие ответы на уже завершенные запросы отбрасываются. Если сессия недействительна,
+     * клиент входит повторно и отправляет команду еще раз
+     *
+     * @param command Команда
+     * @param args Аргументы команды
+     * @param stream Получатель текста результата, может быть null
+     * @return Будущий результат выполнения команды, завершается результатом с ошибкой, если сервер не ответил
+     */
+    public CompletableFuture<CommandResult> sendAsync(Command command, Object[] args, ResultStream stream) {
+        return sendOnce(command, args, stream).thenCompose(result -> {
+            if (result.getResponse() != DefaultResponse.UNAUTHORIZED || passwordMD5 == null)
+                return CompletableFuture.completedFuture(result);
+            // Сессия истекла или сервер был перезапущен, входим заново и повторяем команду
+            return authenticate(login, passwordMD5).thenCompose(logIn -> logIn.getResponse() == SqlResponse.OK ?
+                    sendOnce(command, args, stream) : CompletableFuture.completedFuture(result));
+        });
+    }
+
+    private CompletableFuture<CommandResult> sendOnce(Command command, Object[] args, ResultStream stream) {
+        int requestId = nextRequestId();
+        BinaryWriter writer = new BinaryWriter(ByteBuffer.allocate(BUFFER_SIZE));
+        try {
+            Envelope.writeRequest(writer, requestId, sessionToken, command, args, wireFormat, (capabilities & Hello.DEFLATE) != 0,
+                    earlyWriteAck);
+        } catch (BufferOverflowException e) {
+            return failed("Запрос слишком велик для передачи", DefaultResponse.SERVER_ERROR);
         } catch (IOException e) {
-            return new CommandResult("Нет ответа от сервера", DefaultResponse.SERVER_ERROR);
+            return failed("Не удалось закодировать запрос", DefaultResponse.TYPE_ERROR);
         }
-        return receive();
+        ByteBuffer request = writer.getBuffer();
+        request.flip();
+        return send(requestId, request, stream);
     }
 
-    public CommandResult receive() {
-        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
-        boolean dataReceived = false;
+    private CompletableFuture<CommandResult> send(int requestId, ByteBuffer request, ResultStream stream) {
+        PendingRequest pending = new PendingRequest(requestId, request, stream, rtt.getTimeout());
+        pending.onSent(System.nanoTime());
+        this.pending.put(requestId, pending);
         try {
-            for (int i = 0; i < TIMES_TO_TRY_READ; i++) {
-                if (datagramChannel.receive(buffer) != null) {
-                    dataReceived = true;
-                    break;
+            datagramChannel.send(pending.getRequest(), address);
+        } catch (IOException e) {
+            this.pending.remove(requestId);
+            return failed("Нет ответа от сервера", DefaultResponse.SERVER_ERROR);
+        }
+        selector.wakeup();
+        return pending.getFuture();
+    }
+
+    private int nextRequestId() {
+        int id;
+        do {
+            id = requestIds.incrementAndGet();
+        } while (id == 0);
+        return id;
+    }
+
+    private static CompletableFuture<CommandResult> failed(String msg, Response response) {
+        return CompletableFuture.completedFuture(new CommandResult(msg, response));
+    }
+
+    private void startReceiver() {
+        Thread receiver = new Thread(this::receiveLoop, "udp-client-receiver");
+        receiver.setDaemon(true);
+        receiver.start();
+    }
+
+    private void receiveLoop() {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        while (datagramChannel.isOpen()) {
+            try {
+                selector.select(nextTimeoutMillis());
+                selector.selectedKeys().clear();
+                buffer.clear();
+                while (datagramChannel.receive(buffer) != null) {
+                    buffer.flip();
+                    dispatch(buffer);
+                    buffer.clear();
                 }
-                Thread.sleep(READ_ATTEMPT_DELAY_MS);
+                checkTimeouts();
+            } catch (ClosedSelectorException | ClosedChannelException e) {
+                break;
+            } catch (IOException e) {
+                failAll("Нестабильное соединение");
             }
-        } catch (IOException e) {
-            return new CommandResult("Нестабильное соединение", DefaultResponse.SERVER_ERROR);
-        } catch (InterruptedException e) {
-            return new CommandResult("Получение данных было прервано", DefaultResponse.UNKNOWN);
         }
-        if (!dataReceived)
-            return new CommandResult("Сервер не отвечает", DefaultResponse.SERVER_ERROR);
-        try (ByteArrayInputStream byteInputStream = new ByteArrayInputStream(buffer.array())) {
-            ObjectInputStream objectInputStream = new ObjectInputStream(byteInputStream);
-            CommandResult result = (CommandResult) objectInputStream.readObject();
-            objectInputStream.close();
-            return result;
-        } catch (IOException e) {
-            return new CommandResult("Данные были повреждены", DefaultResponse.SERVER_ERROR);
+        failAll("Соединение с сервером закрыто");
+    }
+
+    private long nextTimeoutMillis() {
+        long now = System.nanoTime(), nearest = Long.MAX_VALUE;
+        for (PendingRequest request : pending.values())
+            nearest = Math.min(nearest, request.getDeadline() - now);
+        if (nearest == Long.MAX_VALUE) return 0;
+        return Math.max(1, TimeUnit.NANOSECONDS.toMillis(nearest));
+    }
+
+    private void dispatch(ByteBuffer buffer) {
+        long now = System.nanoTime();
+        try {
+            int type = Protocol.frameType(buffer);
+            if (type == Protocol.TYPE_RESULT) {
+                ResultMessage message = Envelope.readResult(buffer);
+                PendingRequest request = pending.remove(message.getRequestId());
+                if (request == null) return;
+                sampleRtt(request, now);
+                request.getFuture().complete(message.getResult());
+            } else if (type == Protocol.TYPE_HELLO) {
+                Hello hello = Hello.read(buffer);
+                PendingRequest request = pending.remove(hello.getRequestId());
+                if (request == null) return;
+                sampleRtt(request, now);
+                capabilities = hello.getCapabilities() & Hello.SUPPORTED;
+                request.getFuture().complete(new CommandResult("Возможности согласованы", DefaultResponse.OK));
+            } else if (type == Protocol.TYPE_FRAGMENT) {
+                Fragment fragment = Fragment.read(buffer);
+                PendingRequest request = pending.get(fragment.getRequestId());
+                if (request == null) return;
+                sampleRtt(request, now);
+                if (request.addFragment(fragment, now, rtt.getTimeout()) && request.getAssembler().isComplete()) {
+                    ResultMessage message = Envelope.readResult(request.getAssembler().assemble());
+                    pending.remove(request.getRequestId());
+                    request.getFuture().complete(request.isStreamed() ? new StreamedResult(message.getResult()) : message.getResult());
+                }
+            }
         } catch (ClassNotFoundException e) {
-            return new CommandResult("Не удалось преобразовать результат, не существует нужного класса", DefaultResponse.CLASS_NOT_FOUND);
+            failRequest(buffer, "Не удалось преобразовать результат, не существует нужного класса", DefaultResponse.CLASS_NOT_FOUND);
         } catch (ClassCastException e) {
-            e.printStackTrace();
-            return new CommandResult("Не удалось преобразовать результат, ожидался объект другого типа", DefaultResponse.TYPE_ERROR);
+            failRequest(buffer, "Не удалось преобразовать результат, ожидался объект другого типа", DefaultResponse.TYPE_ERROR);
+        } catch (IOException e) {
+            failRequest(buffer, "Данные были повреждены", DefaultResponse.SERVER_ERROR);
+        }
+    }
+
+    private void sampleRtt(PendingRequest request, long now) {
+        double sample = request.onAnswer(now);
+        if (sample >= 0) rtt.sample(sample);
+    }
+
+    /**
+     * Завершает ошибкой запрос, ответ на который не удалось декодировать, если идентификатор запроса
+     * удалось прочитать, иначе поврежденная датаграмма отбрасывается и запрос будет отправлен повторно
+     */
+    private void failRequest(ByteBuffer buffer, String msg, Response response) {
+        buffer.rewind();
+        if (buffer.remaining() < Envelope.HEADER_SIZE) return;
+        PendingRequest request = pending.remove(buffer.getInt(Protocol.HEADER_SIZE));
+        if (request == null) return;
+        request.release();
+        request.getFuture().complete(new CommandResult(msg, response));
+    }
+
+    private void checkTimeouts() throws IOException {
+        long now = System.nanoTime();
+        for (PendingRequest request : pending.values()) {
+            if (request.getDeadline() > now) continue;
+            FragmentAssembler assembler = request.getAssembler();
+            if (request.getAttempts() >= MAX_RETRANSMISSIONS) {
+                pending.remove(request.getRequestId());
+                request.release();
+                String msg = assembler == null ? "Сервер не отвечает" :
+                        String.format("Сервер перестал отвечать, получено %d из %d фрагментов результата",
+                                assembler.getReceived(), assembler.getTotal());
+                request.getFuture().complete(new CommandResult(msg, DefaultResponse.SERVER_ERROR));
+            } else if (assembler == null) {
+                request.onSent(now);
+                datagramChannel.send(request.getRequest(), address);
+            } else {
+                request.onNack(now, rtt.getTimeout());
+                ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+                new Nack(assembler.getMessageId(), assembler.missing(Nack.MAX_SEQS)).write(new BinaryWriter(buffer));
+                buffer.flip();
+                datagramChannel.send(buffer, address);
+            }
+        }
+    }
+
+    private void failAll(String msg) {
+        for (PendingRequest request : pending.values()) {
+            pending.remove(request.getRequestId());
+            request.release();
+            request.getFuture().complete(new CommandResult(msg, DefaultResponse.SERVER_ERROR));
         }
     }
 
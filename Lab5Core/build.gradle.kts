@@ -9,11 +9,20 @@ repositories {
     mavenCentral()
 }
 
+sourceSets {
+    create("jmh") {
+        compileClasspath += sourceSets.main.get().output
+        runtimeClasspath += sourceSets.main.get().output
+    }
+}
+
 dependencies {
     testImplementation("org.junit.jupiter:junit-jupiter-api:5.8.2")
     testRuntimeOnly("org.junit.jupiter:junit-jupiter-engine")
     compileOnly("org.projectlombok:lombok:1.18.24")
     annotationProcessor("org.projectlombok:lombok:1.18.24")
+    "jmhImplementation"("org.openjdk.jmh:jmh-core:1.35")
+    "jmhAnnotationProcessor"("org.openjdk.jmh:jmh-generator-annprocess:1.35")
 }
 
 tasks.getByName<Test>("test") {
@@ -24,6 +33,19 @@ tasks.compileJava {
     options.encoding = "UTF-8"
 }
 
+tasks.named<JavaCompile>("compileJmhJava") {
+    options.encoding = "UTF-8"
+}
+
+// Usage: ./gradlew :Lab5Core:jmh [-Pjmh=<benchmark name regex>]
+tasks.register<JavaExec>("jmh") {
+    group = "verification"
+    description = "Runs JMH benchmarks from src/jmh"
+    classpath = sourceSets["jmh"].runtimeClasspath
+    mainClass.set("org.openjdk.jmh.Main")
+    args = listOfNotNull(project.findProperty("jmh")?.toString())
+}
+
 tasks.javadoc {
     options.encoding = "UTF-8"
 }
@@ -0,0 +1,62 @@
+package common.collection;
+
+import common.data.Color;
+import common.data.Coordinates;
+import common.data.Country;
+import common.data.Location;
+import common.data.Person;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Бенчмарк поиска людей по подстроке имени: триграммный индекс {@link PeopleCollection#findByName}
+ * против просмотра всей коллекции, которым команда filter_contains_name пользовалась раньше.
+ * Имена состоят из случайных букв, поэтому подстрока из трех и более букв встречается у немногих людей
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NameSearchBenchmark {
+
+    @Param({"100000", "1000000"})
+    private int size;
+
+    @Param({"abc", "abcde"})
+    private String part;
+
+    private PeopleCollection collection;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        List<Person> people = new ArrayList<>(size);
+        for (int i = 1; i <= size; i++) {
+            char[] name = new char[6 + random.nextInt(6)];
+            for (int j = 0; j < name.length; j++) name[j] = (char) ('a' + random.nextInt(26));
+            people.add(new Person(i, new String(name), new Coordinates(random.nextInt(100), random.nextInt(100)),
+                    null, null, Color.BLACK, Country.JAPAN, new Location(0, 0, i, null), "owner"));
+        }
+        collection = new PeopleCollection();
+        collection.addAll(people);
+    }
+
+    @Benchmark
+    public List<Person> indexed() {
+        return collection.findByName(part);
+    }
+
+    @Benchmark
+    public List<Person> scan() {
+        List<Person> result = new ArrayList<>();
+        for (Person person : collection.getCollection())
+            if (person.getName().contains(part)) result.add(person);
+        return result;
+    }
+}
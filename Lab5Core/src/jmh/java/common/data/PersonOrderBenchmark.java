@@ -0,0 +1,76 @@
+package common.data;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Бенчмарк вставки людей в {@link TreeSet}: естественный порядок {@link Person#compareTo} против
+ * прежнего порядка, который собирал цепочку {@link Comparator} и вычислял корни расстояний при каждом сравнении.
+ * Имена повторяются, поэтому сравнения доходят до полей в конце цепочки
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PersonOrderBenchmark {
+
+    private static final Comparator<Location> LEGACY_LOCATION_ORDER = (a, b) ->
+            Comparator.comparing(Location::getName, Comparator.nullsFirst(String::compareTo))
+                    .thenComparing((Location l) -> Math.sqrt(l.getX() * l.getX() + l.getY() * l.getY() + (double) l.getZ() * l.getZ()))
+                    .compare(a, b);
+
+    private static final Comparator<Coordinates> LEGACY_COORDINATES_ORDER = (a, b) -> Double.compare(
+            Math.sqrt(a.getX() * a.getX() + a.getY() * a.getY()), Math.sqrt(b.getX() * b.getX() + b.getY() * b.getY()));
+
+    private static final Comparator<Person> LEGACY_PERSON_ORDER = (a, b) ->
+            Comparator.comparing(Person::getName)
+                    .thenComparing(Person::getPassportID, Comparator.nullsFirst(String::compareTo))
+                    .thenComparing(Person::getHeight, Comparator.nullsFirst(Integer::compareTo))
+                    .thenComparing(Person::getCreationDate)
+                    .thenComparing(p -> p.getNationality().toString())
+                    .thenComparing(Person::getLocation, LEGACY_LOCATION_ORDER)
+                    .thenComparing(Person::getCoordinates, LEGACY_COORDINATES_ORDER)
+                    .thenComparing(p -> p.getEyeColor().toString())
+                    .thenComparing(Person::getId)
+                    .compare(a, b);
+
+    @Param({"10000", "100000"})
+    private int size;
+
+    private List<Person> people;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        people = new ArrayList<>(size);
+        for (int i = 1; i <= size; i++) {
+            Location location = new Location(random.nextInt(10), random.nextInt(10), random.nextInt(10), "l" + random.nextInt(3));
+            people.add(new Person(i, "n" + random.nextInt(size / 100), new Coordinates(random.nextInt(10), random.nextInt(10)),
+                    random.nextBoolean() ? null : random.nextInt(3), null,
+                    Color.values()[random.nextInt(Color.values().length)],
+                    Country.values()[random.nextInt(Country.values().length)], location, "owner"));
+        }
+    }
+
+    @Benchmark
+    public TreeSet<Person> insertNaturalOrder() {
+        TreeSet<Person> set = new TreeSet<>();
+        set.addAll(people);
+        return set;
+    }
+
+    @Benchmark
+    public TreeSet<Person> insertLegacyOrder() {
+        TreeSet<Person> set = new TreeSet<>(LEGACY_PERSON_ORDER);
+        set.addAll(people);
+        return set;
+    }
+}
@@ -0,0 +1,71 @@
+package common.collection;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Класс триграммного индекса имен. Для каждой тройки подряд идущих символов хранится множество id людей,
+ * в имени которых она встречается. Имя, содержащее подстроку, содержит и все ее триграммы, поэтому
+ * пересечение их множеств дает всех кандидатов, которых остается проверить на вхождение подстроки.
+ * Индекс изменяет {@link PeopleCollection} под своей блокировкой записи, а поиск выполняется без блокировки:
+ * множества id потокобезопасны, а при переименовании новые триграммы добавляются раньше удаления старых,
+ * поэтому поиск во время изменения не теряет человека, имя которого содержит подстроку до и после изменения
+ */
+class NameIndex {
+
+    /**
+     * Длина триграммы, подстроки короче нее индексом не обрабатываются
+     */
+    static final int GRAM = 3;
+
+    private final Map<Long, Set<Long>> postings = new ConcurrentHashMap<>();
+
+    void add(long id, String name) {
+        for (int i = 0; i + GRAM <= name.length(); i++)
+            postings.computeIfAbsent(gram(name, i), k -> ConcurrentHashMap.newKeySet()).add(id);
+    }
+
+    void remove(long id, String name) {
+        remove(id, name, Collections.emptySet());
+    }
+
+    /**
+     * Заменяет имя человека, сначала добавляя триграммы нового имени, затем удаляя триграммы, которых в нем нет
+     */
+    void rename(long id, String oldName, String newName) {
+        add(id, newName);
+        Set<Long> kept = new HashSet<>();
+        for (int i = 0; i + GRAM <= newName.length(); i++) kept.add(gram(newName, i));
+        remove(id, oldName, kept);
+    }
+
+    private void remove(long id, String name, Set<Long> kept) {
+        for (int i = 0; i + GRAM <= name.length(); i++) {
+            long gram = gram(name, i);
+            if (kept.contains(gram)) continue;
+            Set<Long> ids = postings.get(gram);
+            if (ids != null && ids.remove(id) && ids.isEmpty()) postings.remove(gram, ids);
+        }
+    }
+
+    /**
+     * @param part Подстрока длиной не меньше {@link #GRAM}
+     * @return Id людей, в имени которых есть все триграммы подстроки
+     */
+    Set<Long> candidates(String part) {
+        List<Set<Long>> sets = new ArrayList<>();
+        for (int i = 0; i + GRAM <= part.length(); i++) {
+            Set<Long> ids = postings.get(gram(part, i));
+            if (ids == null) return Collections.emptySet();
+            sets.add(ids);
+        }
+        sets.sort(Comparator.comparingInt(Set::size));
+        Set<Long> result = new HashSet<>(sets.get(0));
+        for (int i = 1; i < sets.size() && !result.isEmpty(); i++) result.retainAll(sets.get(i));
+        return result;
+    }
+
+    private static long gram(String s, int from) {
+        return (long) s.charAt(from) << 32 | (long) s.charAt(from + 1) << 16 | s.charAt(from + 2);
+    }
+}
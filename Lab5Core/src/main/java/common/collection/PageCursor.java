@@ -0,0 +1,58 @@
+package common.collection;
+
+import common.data.Person;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Класс курсора постраничного просмотра коллекции. Курсор хранит снимок коллекции на момент открытия,
+ * поэтому страницы не сдвигаются при изменениях коллекции между запросами. Курсор, не использованный
+ * дольше {@link #TTL_MS}, считается истекшим
+ */
+public final class PageCursor {
+
+    public static final long TTL_MS = TimeUnit.MINUTES.toMillis(5);
+
+    private final PersistentTreeSet<Person> people;
+    private int position;
+    private volatile long expiresAt;
+
+    public PageCursor(PersistentTreeSet<Person> people) {
+        this.people = people;
+        this.expiresAt = System.currentTimeMillis() + TTL_MS;
+    }
+
+    /**
+     * Возвращает следующую страницу и продлевает время жизни курсора
+     *
+     * @param limit Наибольшее количество людей на странице
+     * @return Люди страницы в порядке коллекции
+     */
+    public synchronized List<Person> next(int limit) {
+        List<Person> page = new ArrayList<>(Math.min(limit, people.size() - position));
+        Iterator<Person> iterator = people.iterator(position);
+        while (page.size() < limit && iterator.hasNext()) page.add(iterator.next());
+        position += page.size();
+        expiresAt = System.currentTimeMillis() + TTL_MS;
+        return page;
+    }
+
+    public synchronized int getPosition() {
+        return position;
+    }
+
+    public int getSize() {
+        return people.size();
+    }
+
+    public synchronized boolean isExhausted() {
+        return position >= people.size();
+    }
+
+    public boolean isExpired() {
+        return System.currentTimeMillis() > expiresAt;
+    }
+}
@@ -1,28 +1,319 @@
 package common.collection;
 
 import lombok.Getter;
+import common.data.Color;
+import common.data.Country;
 import common.data.Person;
 
 import java.time.LocalDate;
-import java.util.Collections;
-import java.util.NavigableSet;
-import java.util.TreeSet;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
+import static common.util.UtilFunctions.compareNullsFirst;
+
+/**
+ * Класс коллекции людей. Люди хранятся в неизменяемом упорядоченном множестве {@link PersistentTreeSet},
+ * рядом с которым поддерживается индекс по id. Изменения выполняются по одному и публикуют новую версию
+ * множества, а читатели получают текущую версию без блокировок и просматривают ее, не мешая изменениям.
+ * Люди в коллекции не изменяются, обновление заменяет человека копией. Счетчики статистики поддерживаются
+ * при каждом изменении, и каждая версия публикуется со статистикой {@link Statistics} из их значений,
+ * а распределение по создателям собирается только при первом запросе к нему.
+ * Поиск по подстроке имени использует триграммный индекс {@link NameIndex}, а для обхода по местоположениям
+ * в каждой версии есть второе множество тех же людей, упорядоченное по местоположению. Люди каждого
+ * создателя дополнительно хранятся в отдельном неизменяемом множестве, которое заменяется при изменениях
+ */
 public class PeopleCollection {
 
-    private final static String TYPE = "TreeSet";
+    private final static String TYPE = "PersistentTreeSet";
+    /**
+     * Пачка меньше размера коллекции, деленного на это число, добавляется поэлементно, а не слиянием
+     */
+    private static final int MERGE_RATIO = 8;
+    /**
+     * Порядок по местоположению, люди с равными местоположениями различаются по id
+     */
+    private static final Comparator<Person> LOCATION_ORDER = (a, b) -> {
+        int result = compareNullsFirst(a.getLocation(), b.getLocation());
+        return result != 0 ? result : a.getId().compareTo(b.getId());
+    };
 
-    @Getter
-    private final NavigableSet<Person> collection = Collections.synchronizedNavigableSet(new TreeSet<>());
+    private final Object writeLock = new Object();
+    private final Map<Long, Person> index = new ConcurrentHashMap<>();
+    private final NavigableMap<Integer, Integer> heights = new TreeMap<>();
+    private final int[] byCountry = new int[Country.values().length], byColor = new int[Color.values().length];
+    private final NameIndex names = new NameIndex();
+    private final Map<String, PersistentTreeSet<Person>> owners = new ConcurrentHashMap<>();
+    private long heightSum;
+    private int nullHeights;
+    private volatile Version current = version(PersistentTreeSet.empty(), PersistentTreeSet.empty(LOCATION_ORDER));
     @Getter
     private final LocalDate initDate = LocalDate.now();
 
+    /**
+     * @return Снимок упорядоченного множества людей на момент вызова, последующие изменения коллекции на нем не отражаются
+     */
+    public PersistentTreeSet<Person> getCollection() {
+        return current.people;
+    }
+
+    /**
+     * @return Снимок множества людей, упорядоченного по местоположению, на момент вызова
+     */
+    public PersistentTreeSet<Person> getByLocation() {
+        return current.byLocation;
+    }
+
+    /**
+     * @return Снимок упорядоченного множества людей создателя, пустое множество, если у него нет людей
+     */
+    public PersistentTreeSet<Person> getByOwner(String owner) {
+        PersistentTreeSet<Person> people = owners.get(owner);
+        return people == null ? PersistentTreeSet.empty() : people;
+    }
+
+    /**
+     * @return Статистика коллекции, соответствующая последней опубликованной версии, возвращается без блокировок
+     */
+    public Statistics getStatistics() {
+        return current.statistics;
+    }
+
+    public void add(Person person) {
+        synchronized (writeLock) {
+            PersistentTreeSet<Person> next = current.people, byLocation = current.byLocation;
+            Person previous = index.put(person.getId(), person);
+            if (previous != null) {
+                next = next.without(previous);
+                byLocation = byLocation.without(previous);
+                account(previous, -1);
+                names.rename(person.getId(), previous.getName(), person.getName());
+            } else {
+                names.add(person.getId(), person.getName());
+            }
+            account(person, 1);
+            publish(next.with(person), byLocation.with(person));
+        }
+    }
+
+    /**
+     * Находит людей, в имени которых содержится подстрока. Для подстрок не короче триграммы кандидаты
+     * выбираются по индексу без блокировки записи, более короткие проверяются просмотром всей коллекции
+     *
+     * @return Люди в порядке коллекции
+     */
+    public List<Person> findByName(String part) {
+        List<Person> result = new ArrayList<>();
+        if (part.length() < NameIndex.GRAM) {
+            for (Person person : getCollection())
+                if (person.getName().contains(part)) result.add(person);
+            return result;
+        }
+        for (Long id : names.candidates(part)) {
+            Person person = index.get(id);
+            if (person != null && person.getName().contains(part)) result.add(person);
+        }
+        result.sort(null);
+        return result;
+    }
+
+    /**
+     * Добавляет людей в коллекцию. Пустая коллекция строится целиком из отсортированных людей,
+     * без поэлементных вставок, что используется при загрузке коллекции из базы данных. В непустую коллекцию
+     * большая пачка новых людей вливается слиянием отсортированной пачки с текущими множествами за линейное время,
+     * небольшая пачка и люди с уже существующими id добавляются поэлементно
+     */
+    public void addAll(Collection<Person> people) {
+        synchronized (writeLock) {
+            if (people.size() < index.size() / MERGE_RATIO) {
+                people.forEach(this::add);
+                return;
+            }
+            List<Person> fresh = new ArrayList<>(people.size()), replacing = new ArrayList<>();
+            for (Person person : people)
+                (index.putIfAbsent(person.getId(), person) == null ? fresh : replacing).add(person);
+            Person[] sorted = fresh.toArray(new Person[0]);
+            Arrays.parallelSort(sorted);
+            Map<String, List<Person>> partitions = new HashMap<>();
+            for (Person person : sorted) {
+                count(person, 1);
+                names.add(person.getId(), person.getName());
+                if (person.getOwner() != null)
+                    partitions.computeIfAbsent(person.getOwner(), k -> new ArrayList<>()).add(person);
+            }
+            partitions.forEach((owner, owned) ->
+                    owners.put(owner, PersistentTreeSet.fromSorted(merge(getByOwner(owner), owned, null), null)));
+            Person[] byLocation = fresh.toArray(new Person[0]);
+            Arrays.parallelSort(byLocation, LOCATION_ORDER);
+            publish(PersistentTreeSet.fromSorted(merge(current.people, Arrays.asList(sorted), null), null),
+                    PersistentTreeSet.fromSorted(merge(current.byLocation, Arrays.asList(byLocation), LOCATION_ORDER), LOCATION_ORDER));
+            replacing.forEach(this::add);
+        }
+    }
+
+    /**
+     * Сливает множество с отсортированным в том же порядке списком
+     *
+     * @param order Порядок множества и списка, null для естественного порядка
+     */
+    private static List<Person> merge(PersistentTreeSet<Person> set, List<Person> sorted, Comparator<Person> order) {
+        if (set.isEmpty()) return sorted;
+        Comparator<Person> comparator = order == null ? Comparator.naturalOrder() : order;
+        List<Person> result = new ArrayList<>(set.size() + sorted.size());
+        Iterator<Person> it = set.iterator();
+        Person next = it.next();
+        int i = 0;
+        while (next != null && i < sorted.size()) {
+            if (comparator.compare(next, sorted.get(i)) <= 0) {
+                result.add(next);
+                next = it.hasNext() ? it.next() : null;
+            } else {
+                result.add(sorted.get(i++));
+            }
+        }
+        if (next != null) result.add(next);
+        it.forEachRemaining(result::add);
+        result.addAll(sorted.subList(i, sorted.size()));
+        return result;
+    }
+
+    /**
+     * @return Человек с заданным id или null, если его нет в коллекции
+     */
+    public Person get(long id) {
+        return index.get(id);
+    }
+
+    /**
+     * @return true, если человек с заданным id был удален
+     */
+    public boolean removeById(long id) {
+        synchronized (writeLock) {
+            Person person = index.remove(id);
+            if (person == null) return false;
+            account(person, -1);
+            names.remove(id, person.getName());
+            publish(current.people.without(person), current.byLocation.without(person));
+            return true;
+        }
+    }
+
+    /**
+     * Заменяет человека с заданным id его копией со значениями полей нового человека
+     *
+     * @return true, если человек с заданным id найден и обновлен
+     */
+    public boolean update(long id, Person newPerson) {
+        synchronized (writeLock) {
+            Person person = index.get(id);
+            if (person == null) return false;
+            Person updated = person.updated(newPerson);
+            index.put(id, updated);
+            account(person, -1);
+            account(updated, 1);
+            names.rename(id, person.getName(), updated.getName());
+            publish(current.people.without(person).with(updated), current.byLocation.without(person).with(updated));
+            return true;
+        }
+    }
+
+    /**
+     * Удаляет всех людей создателя, просматривая только их
+     *
+     * @return Количество удаленных людей
+     */
+    public int removeByOwner(String owner) {
+        synchronized (writeLock) {
+            PersistentTreeSet<Person> removed = owners.get(owner);
+            if (removed == null) return 0;
+            PersistentTreeSet<Person> next = current.people, byLocation = current.byLocation;
+            for (Person person : removed) {
+                next = next.without(person);
+                byLocation = byLocation.without(person);
+                index.remove(person.getId());
+                account(person, -1);
+                names.remove(person.getId(), person.getName());
+            }
+            publish(next, byLocation);
+            return removed.size();
+        }
+    }
+
+    /**
+     * @return Количество удаленных людей
+     */
+    public int removeIf(Predicate<Person> filter) {
+        synchronized (writeLock) {
+            PersistentTreeSet<Person> previous = current.people, next = previous, byLocation = current.byLocation;
+            for (Person person : previous) {
+                if (!filter.test(person)) continue;
+                next = next.without(person);
+                byLocation = byLocation.without(person);
+                index.remove(person.getId());
+                account(person, -1);
+                names.remove(person.getId(), person.getName());
+            }
+            publish(next, byLocation);
+            return previous.size() - next.size();
+        }
+    }
+
+    /**
+     * Учитывает человека в счетчиках и множестве его создателя, вызывается под блокировкой записи
+     *
+     * @param delta 1 при добавлении человека, -1 при удалении
+     */
+    private void account(Person person, int delta) {
+        count(person, delta);
+        if (person.getOwner() == null) return;
+        PersistentTreeSet<Person> people = getByOwner(person.getOwner());
+        people = delta > 0 ? people.with(person) : people.without(person);
+        if (people.isEmpty()) {
+            owners.remove(person.getOwner());
+        } else {
+            owners.put(person.getOwner(), people);
+        }
+    }
+
+    /**
+     * Учитывает человека в счетчиках статистики, не затрагивая множество создателя. Индекс имен
+     * изменяется отдельно, чтобы переименование не удаляло из него человека даже на время
+     */
+    private void count(Person person, int delta) {
+        Integer height = person.getHeight();
+        if (height == null) {
+            nullHeights += delta;
+        } else {
+            heightSum += (long) delta * height;
+            heights.merge(height, delta, (a, b) -> a + b == 0 ? null : a + b);
+        }
+        byCountry[person.getNationality().ordinal()] += delta;
+        byColor[person.getEyeColor().ordinal()] += delta;
+    }
+
+    /**
+     * Публикует новую версию множеств, вызывается под блокировкой записи
+     */
+    private void publish(PersistentTreeSet<Person> people, PersistentTreeSet<Person> byLocation) {
+        current = version(people, byLocation);
+    }
+
+    /**
+     * Собирает версию со статистикой из текущих счетчиков. Копируются только счетчики по национальностям
+     * и цветам, размер которых не зависит от коллекции
+     */
+    private Version version(PersistentTreeSet<Person> people, PersistentTreeSet<Person> byLocation) {
+        return new Version(people, byLocation, new Statistics(people.size(), heightSum, nullHeights,
+                heights.isEmpty() ? null : heights.firstKey(), heights.isEmpty() ? null : heights.lastKey(),
+                byCountry, byColor, owners));
+    }
+
     public String info() {
         return String.format("Тип коллекции: %s \n" +
                         "Дата инициализации: %s \n" +
                         "Количество элементов: %d \n",
-                TYPE, this.initDate, this.collection.size());
+                TYPE, this.initDate, this.current.people.size());
     }
 
     public void initFromDatabase(String url, String login, String password) {
@@ -32,8 +323,19 @@ public class PeopleCollection {
     @Override
     public String toString() {
         String result = "PeopleDatabase(";
-        result += this.collection.stream().map(Person::toString).collect(Collectors.joining(", "));
+        result += this.current.people.stream().map(Person::toString).collect(Collectors.joining(", "));
         result += ")";
         return result;
     }
+
+    private static final class Version {
+        private final PersistentTreeSet<Person> people, byLocation;
+        private final Statistics statistics;
+
+        private Version(PersistentTreeSet<Person> people, PersistentTreeSet<Person> byLocation, Statistics statistics) {
+            this.people = people;
+            this.byLocation = byLocation;
+            this.statistics = statistics;
+        }
+    }
 }
@@ -0,0 +1,287 @@
+package common.collection;
+
+import java.util.*;
+
+/**
+ * Класс неизменяемого упорядоченного множества на основе АВЛ-дерева. Добавление и удаление
+ * возвращают новое множество, копируя только путь от корня до изменяемого узла, остальные узлы
+ * разделяются между версиями. Поэтому любая версия может читаться без блокировок, пока
+ * создаются следующие. Узлы хранят размер поддерева, что позволяет получать элемент по номеру
+ *
+ * @param <E> Тип элементов
+ */
+public final class PersistentTreeSet<E> extends AbstractSet<E> {
+
+    private static final PersistentTreeSet<?> EMPTY = new PersistentTreeSet<>(null, null);
+
+    private final Comparator<? super E> comparator;
+    private final Node<E> root;
+
+    private PersistentTreeSet(Comparator<? super E> comparator, Node<E> root) {
+        this.comparator = comparator;
+        this.root = root;
+    }
+
+    /**
+     * @return Пустое множество с естественным порядком элементов
+     */
+    @SuppressWarnings("unchecked")
+    public static <E extends Comparable<? super E>> PersistentTreeSet<E> empty() {
+        return (PersistentTreeSet<E>) EMPTY;
+    }
+
+    public static <E> PersistentTreeSet<E> empty(Comparator<? super E> comparator) {
+        return new PersistentTreeSet<>(comparator, null);
+    }
+
+    /**
+     * Строит сбалансированное множество из элементов, уже упорядоченных по возрастанию и не содержащих
+     * повторов, за O(n) без поэлементных вставок
+     *
+     * @param sorted Упорядоченные элементы
+     * @param comparator Порядок элементов или null для естественного порядка
+     */
+    public static <E> PersistentTreeSet<E> fromSorted(List<? extends E> sorted, Comparator<? super E> comparator) {
+        return new PersistentTreeSet<>(comparator, build(sorted, 0, sorted.size()));
+    }
+
+    /**
+     * @return Множество с добавленным элементом, равный ему элемент заменяется
+     */
+    public PersistentTreeSet<E> with(E element) {
+        Objects.requireNonNull(element);
+        return new PersistentTreeSet<>(comparator, insert(root, element));
+    }
+
+    /**
+     * @return Множество без элемента или это же множество, если элемента в нем нет
+     */
+    public PersistentTreeSet<E> without(E element) {
+        Node<E> newRoot = delete(root, element);
+        return newRoot == root ? this : new PersistentTreeSet<>(comparator, newRoot);
+    }
+
+    @Override
+    public int size() {
+        return size(root);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return root == null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean contains(Object o) {
+        if (o == null) return false;
+        Node<E> node = root;
+        while (node != null) {
+            int cmp = compare((E) o, node.value);
+            if (cmp == 0) return true;
+            node = cmp < 0 ? node.left : node.right;
+        }
+        return false;
+    }
+
+    /**
+     * @throws NoSuchElementException если множество пусто
+     */
+    public E first() {
+        if (root == null) throw new NoSuchElementException();
+        Node<E> node = root;
+        while (node.left != null) node = node.left;
+        return node.value;
+    }
+
+    /**
+     * @throws NoSuchElementException если множество пусто
+     */
+    public E last() {
+        if (root == null) throw new NoSuchElementException();
+        Node<E> node = root;
+        while (node.right != null) node = node.right;
+        return node.value;
+    }
+
+    /**
+     * @param index Номер элемента в порядке возрастания, начиная с 0
+     * @throws IndexOutOfBoundsException если номер вне множества
+     */
+    public E get(int index) {
+        if (index < 0 || index >= size()) throw new IndexOutOfBoundsException("Индекс " + index + ", размер " + size());
+        Node<E> node = root;
+        while (true) {
+            int leftSize = size(node.left);
+            if (index == leftSize) return node.value;
+            if (index < leftSize) {
+                node = node.left;
+            } else {
+                index -= leftSize + 1;
+                node = node.right;
+            }
+        }
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return new NodeIterator<>(root, false);
+    }
+
+    /**
+     * Возвращает итератор, начинающий с элемента с заданным номером. Начальная позиция находится
+     * по размерам поддеревьев за O(log n), без перебора предшествующих элементов
+     *
+     * @param from Номер первого элемента, при номере не меньше размера итератор пуст
+     */
+    public Iterator<E> iterator(int from) {
+        if (from < 0) throw new IndexOutOfBoundsException("Индекс " + from);
+        NodeIterator<E> iterator = new NodeIterator<>(null, false);
+        Node<E> node = root;
+        while (node != null) {
+            int leftSize = size(node.left);
+            if (from < leftSize) {
+                iterator.stack.push(node);
+                node = node.left;
+            } else if (from == leftSize) {
+                iterator.stack.push(node);
+                break;
+            } else {
+                from -= leftSize + 1;
+                node = node.right;
+            }
+        }
+        return iterator;
+    }
+
+    public Iterator<E> descendingIterator() {
+        return new NodeIterator<>(root, true);
+    }
+
+    @Override
+    public Spliterator<E> spliterator() {
+        return Spliterators.spliterator(this, Spliterator.ORDERED | Spliterator.SORTED | Spliterator.DISTINCT
+                | Spliterator.NONNULL | Spliterator.IMMUTABLE);
+    }
+
+    public Comparator<? super E> comparator() {
+        return comparator;
+    }
+
+    @SuppressWarnings("unchecked")
+    private int compare(E a, E b) {
+        return comparator == null ? ((Comparable<? super E>) a).compareTo(b) : comparator.compare(a, b);
+    }
+
+    private static <E> Node<E> build(List<? extends E> sorted, int from, int to) {
+        if (from >= to) return null;
+        int middle = (from + to) >>> 1;
+        return new Node<>(sorted.get(middle), build(sorted, from, middle), build(sorted, middle + 1, to));
+    }
+
+    private Node<E> insert(Node<E> node, E element) {
+        if (node == null) return new Node<>(element, null, null);
+        int cmp = compare(element, node.value);
+        if (cmp == 0) return new Node<>(element, node.left, node.right);
+        if (cmp < 0) return balance(node.value, insert(node.left, element), node.right);
+        return balance(node.value, node.left, insert(node.right, element));
+    }
+
+    private Node<E> delete(Node<E> node, E element) {
+        if (node == null) return null;
+        int cmp = compare(element, node.value);
+        if (cmp < 0) {
+            Node<E> left = delete(node.left, element);
+            return left == node.left ? node : balance(node.value, left, node.right);
+        }
+        if (cmp > 0) {
+            Node<E> right = delete(node.right, element);
+            return right == node.right ? node : balance(node.value, node.left, right);
+        }
+        if (node.left == null) return node.right;
+        if (node.right == null) return node.left;
+        Node<E> min = node.right;
+        while (min.left != null) min = min.left;
+        return balance(min.value, node.left, deleteMin(node.right));
+    }
+
+    private Node<E> deleteMin(Node<E> node) {
+        if (node.left == null) return node.right;
+        return balance(node.value, deleteMin(node.left), node.right);
+    }
+
+    private static <E> Node<E> balance(E value, Node<E> left, Node<E> right) {
+        int diff = height(left) - height(right);
+        if (diff > 1) {
+            if (height(left.left) < height(left.right))
+                left = rotateLeft(left.value, left.left, left.right);
+            return rotateRight(value, left, right);
+        }
+        if (diff < -1) {
+            if (height(right.right) < height(right.left))
+                right = rotateRight(right.value, right.left, right.right);
+            return rotateLeft(value, left, right);
+        }
+        return new Node<>(value, left, right);
+    }
+
+    private static <E> Node<E> rotateRight(E value, Node<E> left, Node<E> right) {
+        return new Node<>(left.value, left.left, new Node<>(value, left.right, right));
+    }
+
+    private static <E> Node<E> rotateLeft(E value, Node<E> left, Node<E> right) {
+        return new Node<>(right.value, new Node<>(value, left, right.left), right.right);
+    }
+
+    private static int height(Node<?> node) {
+        return node == null ? 0 : node.height;
+    }
+
+    private static int size(Node<?> node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static final class Node<E> {
+        private final E value;
+        private final Node<E> left, right;
+        private final int height, size;
+
+        private Node(E value, Node<E> left, Node<E> right) {
+            this.value = value;
+            this.left = left;
+            this.right = right;
+            this.height = Math.max(height(left), height(right)) + 1;
+            this.size = size(left) + size(right) + 1;
+        }
+    }
+
+    private static final class NodeIterator<E> implements Iterator<E> {
+        private final Deque<Node<E>> stack = new ArrayDeque<>();
+        private final boolean descending;
+
+        private NodeIterator(Node<E> root, boolean descending) {
+            this.descending = descending;
+            push(root);
+        }
+
+        private void push(Node<E> node) {
+            while (node != null) {
+                stack.push(node);
+                node = descending ? node.right : node.left;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !stack.isEmpty();
+        }
+
+        @Override
+        public E next() {
+            if (stack.isEmpty()) throw new NoSuchElementException();
+            Node<E> node = stack.pop();
+            push(descending ? node.left : node.right);
+            return node.value;
+        }
+    }
+}
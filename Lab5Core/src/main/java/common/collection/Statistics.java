@@ -0,0 +1,112 @@
+package common.collection;
+
+import common.data.Color;
+import common.data.Country;
+import common.data.Person;
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Класс статистики коллекции людей. Коллекция публикует ее вместе с каждой версией множества людей из счетчиков,
+ * которые поддерживаются при изменениях, поэтому размер, рост и распределения по национальностям и цветам
+ * соответствуют версии и не требуют просмотра коллекции. Распределение по создателям собирается при первом
+ * запросе к нему из множеств создателей без блокировок и может учитывать изменения, сделанные после версии
+ */
+public final class Statistics {
+
+    @Getter
+    private final int size;
+    /**
+     * Сумма ростов людей, у которых рост указан
+     */
+    @Getter
+    private final long heightSum;
+    /**
+     * Количество людей без указанного роста
+     */
+    @Getter
+    private final int nullHeights;
+    /**
+     * Наименьший рост или null, если ни у кого рост не указан
+     */
+    @Getter
+    private final Integer minHeight;
+    /**
+     * Наибольший рост или null, если ни у кого рост не указан
+     */
+    @Getter
+    private final Integer maxHeight;
+    private final int[] byCountry, byColor;
+    private final Map<String, PersistentTreeSet<Person>> owners;
+    private volatile Map<String, Integer> byOwner;
+
+    Statistics(int size, long heightSum, int nullHeights, Integer minHeight, Integer maxHeight,
+               int[] byCountry, int[] byColor, Map<String, PersistentTreeSet<Person>> owners) {
+        this.size = size;
+        this.heightSum = heightSum;
+        this.nullHeights = nullHeights;
+        this.minHeight = minHeight;
+        this.maxHeight = maxHeight;
+        this.byCountry = byCountry.clone();
+        this.byColor = byColor.clone();
+        this.owners = owners;
+    }
+
+    /**
+     * @return Количество людей каждого создателя в порядке логинов, собирается при первом вызове
+     */
+    private Map<String, Integer> byOwner() {
+        Map<String, Integer> result = byOwner;
+        if (result == null) {
+            Map<String, Integer> counts = new TreeMap<>();
+            owners.forEach((owner, people) -> counts.put(owner, people.size()));
+            byOwner = result = Collections.unmodifiableMap(counts);
+        }
+        return result;
+    }
+
+    /**
+     * @return Средний рост среди людей, у которых рост указан, или NaN, если таких нет
+     */
+    public double getAverageHeight() {
+        int count = size - nullHeights;
+        return count == 0 ? Double.NaN : (double) heightSum / count;
+    }
+
+    public int getCount(Country country) {
+        return byCountry[country.ordinal()];
+    }
+
+    public int getCount(Color color) {
+        return byColor[color.ordinal()];
+    }
+
+    public int getCount(String owner) {
+        PersistentTreeSet<Person> people = owners.get(owner);
+        return people == null ? 0 : people.size();
+    }
+
+    public String formatted() {
+        StringBuilder result = new StringBuilder(String.format("Количество элементов: %d\n" +
+                        "Рост:\n" +
+                        "\tСумма: %d\n" +
+                        "\tНаименьший: %s\n" +
+                        "\tНаибольший: %s\n" +
+                        "\tСредний: %s\n" +
+                        "\tНе указан: %d\n",
+                size, heightSum, minHeight, maxHeight,
+                size == nullHeights ? null : String.format("%.2f", getAverageHeight()), nullHeights));
+        result.append("Национальности:\n");
+        for (Country country : Country.values())
+            result.append('\t').append(country).append(": ").append(getCount(country)).append('\n');
+        result.append("Цвета глаз:\n");
+        for (Color color : Color.values())
+            result.append('\t').append(color).append(": ").append(getCount(color)).append('\n');
+        result.append("Создатели:\n");
+        byOwner().forEach((owner, count) -> result.append('\t').append(owner).append(": ").append(count).append('\n'));
+        return result.toString();
+    }
+}
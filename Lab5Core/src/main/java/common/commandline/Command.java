@@ -22,5 +22,13 @@ public abstract class Command implements Serializable {
         return new Object[]{};
     }
 
+    /**
+     * @return true, если повторное выполнение команды не меняет данных и ее результат не нужно хранить
+     * для повторной отправки при потере ответа
+     */
+    public boolean isIdempotent() {
+        return true;
+    }
+
     public abstract CommandResult execute(Object[] args);
 }
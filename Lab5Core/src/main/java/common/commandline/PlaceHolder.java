@@ -18,6 +18,15 @@ public class PlaceHolder<T> implements Serializable {
         return clazz;
     }
 
+    /**
+     * @return true, если среди аргументов остался незамененный заполнитель, ожидающий объект класса clazz
+     */
+    public static boolean isUnresolved(Object[] args, Class<?> clazz) {
+        for (Object obj : args)
+            if (obj instanceof PlaceHolder && ((PlaceHolder<?>) obj).clazz == clazz) return true;
+        return false;
+    }
+
     public static Object[] replacePlaceHoldersWith(Object[] args, Object... replaceWith) {
         Object[] result = new Object[args.length];
         for (int i = 0; i < args.length; i++) {
@@ -26,7 +35,7 @@ public class PlaceHolder<T> implements Serializable {
             if (!(obj instanceof PlaceHolder)) continue;
             PlaceHolder<?> placeHolder = (PlaceHolder<?>) obj;
             for (Object replace : replaceWith) {
-                if (placeHolder.clazz.isAssignableFrom(replace.getClass())) {
+                if (replace != null && placeHolder.clazz.isAssignableFrom(replace.getClass())) {
                     result[i] = replace;
                     break;
                 }
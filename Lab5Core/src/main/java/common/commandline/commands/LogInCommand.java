@@ -3,13 +3,13 @@ package common.commandline.commands;
 import common.commandline.Command;
 import common.commandline.PlaceHolder;
 import common.commandline.response.CommandResult;
+import common.commandline.response.LogInResult;
 import common.commandline.response.Response;
 import common.commandline.response.SqlResponse;
-
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
-import java.sql.SQLException;
+import common.session.Session;
+import common.session.SessionTable;
+import common.store.PeopleStore;
+import common.store.StoreException;
 
 public class LogInCommand extends Command {
 
@@ -17,33 +17,34 @@ public class LogInCommand extends Command {
         super("login", false, "login");
     }
 
+    /**
+     * Каждый вход открывает новую сессию, поэтому повторная датаграмма получает сохраненный токен первого входа
+     */
+    @Override
+    public boolean isIdempotent() {
+        return false;
+    }
+
     @Override
     public Object[] validate(String[] args) {
-        return new Object[]{args[0], args[1], PlaceHolder.of(Connection.class)};
+        return new Object[]{args[0], args[1], PlaceHolder.of(PeopleStore.class), PlaceHolder.of(SessionTable.class)};
     }
 
     @Override
     public CommandResult execute(Object[] args) {
         String login = (String) args[0];
         String password = (String) args[1];
-        Connection connection = (Connection) args[2];
+        PeopleStore store = (PeopleStore) args[2];
+        SessionTable sessions = (SessionTable) args[3];
         Response response;
+        Session session = null;
         try {
-            PreparedStatement statement = connection.prepareStatement(
-                        "SELECT COUNT(1) FROM users " +
-                            "WHERE login = ? AND password = ?;"
-            );
-            statement.setString(1, login);
-            statement.setString(2, password);
-            ResultSet result = statement.executeQuery();
-            result.next();
-            boolean authorize = result.getInt(1) > 0;
-            response = authorize ? SqlResponse.OK : SqlResponse.WRONG_CREDENTIALS;
-            connection.commit();
-        } catch (SQLException e) {
+            session = store.logIn(login, password, sessions);
+            response = session != null ? SqlResponse.OK : SqlResponse.WRONG_CREDENTIALS;
+        } catch (StoreException e) {
             e.printStackTrace();
             response = SqlResponse.UNKNOWN;
         }
-        return new CommandResult(response.getMsg(), response);
+        return new LogInResult(response.getMsg(), response, session == null ? SessionTable.NO_SESSION : session.getToken());
     }
 }
@@ -5,10 +5,8 @@ import common.commandline.PlaceHolder;
 import common.commandline.response.CommandResult;
 import common.commandline.response.Response;
 import common.commandline.response.SqlResponse;
-
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.SQLException;
+import common.store.PeopleStore;
+import common.store.StoreException;
 
 public class SignUpCommand extends Command {
 
@@ -16,32 +14,27 @@ public class SignUpCommand extends Command {
         super("signup", false, "signup");
     }
 
+    @Override
+    public boolean isIdempotent() {
+        return false;
+    }
+
     @Override
     public Object[] validate(String[] args) {
-        return new Object[]{args[0], args[1], PlaceHolder.of(Connection.class)};
+        return new Object[]{args[0], args[1], PlaceHolder.of(PeopleStore.class)};
     }
 
     @Override
     public CommandResult execute(Object[] args) {
         String login = (String) args[0];
         String password = (String) args[1];
-        Connection connection = (Connection) args[2];
+        PeopleStore store = (PeopleStore) args[2];
         Response response;
         try {
-            PreparedStatement statement = connection.prepareStatement(
-                    "INSERT INTO users (login, password) " +
-                            "VALUES(?, ?);"
-            );
-            statement.setString(1, login);
-            statement.setString(2, password);
-            statement.executeUpdate();
-            response = SqlResponse.OK;
-            connection.commit();
-        } catch (SQLException e) {
-            String state = e.getSQLState();
+            response = store.signUp(login, password) ? SqlResponse.OK : SqlResponse.LOGIN_EXISTS;
+        } catch (StoreException e) {
             e.printStackTrace();
-            if (state.equals("23505")) response = SqlResponse.LOGIN_EXISTS;
-            else response = SqlResponse.UNKNOWN;
+            response = SqlResponse.UNKNOWN;
         }
         return new CommandResult(response.getMsg(), response);
     }
@@ -11,6 +11,11 @@ public class AddIfMaxCommand extends PeopleDatabaseCommand {
         super("add_if_max", false, "add_if_max <Person> : добавить новый элемент в коллекцию, если его значение превышает значение наибольшего элемента этой коллекции");
     }
 
+    @Override
+    public boolean isIdempotent() {
+        return false;
+    }
+
     @Override
     public Object[] validate(String[] args) {
         return new AddCommand().validate(args);
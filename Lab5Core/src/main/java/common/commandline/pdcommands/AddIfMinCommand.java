@@ -11,6 +11,11 @@ public class AddIfMinCommand extends PeopleDatabaseCommand {
         super("add_if_min", false, "add_if_min <Person> : добавить новый элемент в коллекцию, если его значение меньше, чем у наименьшего элемента этой коллекции");
     }
 
+    @Override
+    public boolean isIdempotent() {
+        return false;
+    }
+
     @Override
     public Object[] validate(String[] args) {
         return new AddCommand().validate(args);
@@ -1,47 +1,50 @@
 package common.commandline.pdcommands;
 
 import common.collection.PeopleCollection;
-import common.commandline.CommandLineHandler;
 import common.commandline.PlaceHolder;
 import common.commandline.response.CommandResult;
 import common.commandline.response.DefaultResponse;
 import common.commandline.response.Response;
 import common.commandline.response.SqlResponse;
-
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.SQLException;
+import common.session.Session;
+import common.store.PeopleStore;
+import common.store.StoreException;
+import common.store.WriteBehind;
 
 public class ClearCommand extends PeopleDatabaseCommand {
     public ClearCommand() {
         super("clear", false, "clear : очистить коллекцию");
     }
 
+    @Override
+    public boolean isIdempotent() {
+        return false;
+    }
+
     @Override
     public Object[] validate(String[] args) {
-        return new Object[]{CommandLineHandler.getUser(), PlaceHolder.of(PeopleCollection.class), PlaceHolder.of(Connection.class)};
+        return new Object[]{PlaceHolder.of(Session.class), PlaceHolder.of(PeopleCollection.class), PlaceHolder.of(PeopleStore.class),
+                PlaceHolder.of(WriteBehind.class)};
     }
 
     @Override
     public CommandResult execute(Object[] args) {
-        String owner = (String) args[0];
+        Session session = (Session) args[0];
         PeopleCollection peopleCollection = (PeopleCollection) args[1];
-        Connection connection = (Connection) args[2];
+        if (args.length > 3 && args[3] instanceof WriteBehind) {
+            ((WriteBehind) args[3]).removeByOwner(peopleCollection, session);
+            Response response = DefaultResponse.OK;
+            return new CommandResult(response.getMsg(), response);
+        }
+        PeopleStore store = (PeopleStore) args[2];
         try {
-            PreparedStatement statement = connection.prepareStatement(
-                        "DELETE FROM people " +
-                            "USING users " +
-                            "WHERE users.id = owner_id AND login = ?;"
-            );
-            statement.setString(1, owner);
-            statement.executeUpdate();
-            connection.commit();
-        } catch (SQLException e) {
+            store.removeByOwner(session);
+        } catch (StoreException e) {
             e.printStackTrace();
             Response response = SqlResponse.UNKNOWN;
             return new CommandResult(response.getMsg(), response);
         }
-        peopleCollection.getCollection().removeIf(p -> p.getOwner().equals(owner));
+        peopleCollection.removeByOwner(session.getLogin());
         Response response = DefaultResponse.OK;
         return new CommandResult(response.getMsg(), response);
     }
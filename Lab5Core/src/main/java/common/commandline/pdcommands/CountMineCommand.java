@@ -0,0 +1,27 @@
+package common.commandline.pdcommands;
+
+import common.collection.PeopleCollection;
+import common.commandline.PlaceHolder;
+import common.commandline.response.CommandResult;
+import common.commandline.response.DefaultResponse;
+import common.session.Session;
+
+public class CountMineCommand extends PeopleDatabaseCommand {
+    public CountMineCommand() {
+        super("count_mine", false, "count_mine : вывести количество элементов коллекции, созданных пользователем");
+    }
+
+    @Override
+    public Object[] validate(String[] args) {
+        return new Object[]{PlaceHolder.of(Session.class), PlaceHolder.of(PeopleCollection.class)};
+    }
+
+    @Override
+    public CommandResult execute(Object[] args) {
+        Session session = (Session) args[0];
+        PeopleCollection peopleCollection = (PeopleCollection) args[1];
+        String count = "Количество элементов, созданных пользователем " + session.getLogin() + " - "
+                + peopleCollection.getByOwner(session.getLogin()).size();
+        return new CommandResult(count, DefaultResponse.OK);
+    }
+}
@@ -0,0 +1,136 @@
+package common.commandline.pdcommands;
+
+import common.collection.PeopleCollection;
+import common.collection.PersistentTreeSet;
+import common.commandline.PlaceHolder;
+import common.commandline.response.CommandResult;
+import common.commandline.response.DefaultResponse;
+import common.commandline.response.Response;
+import common.data.Location;
+import common.data.Person;
+import common.net.ConnectionProperties;
+import common.net.protocol.BinaryWriter;
+import common.net.protocol.DataCodec;
+import common.util.RecordReader;
+import common.util.RecordWriter;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+
+/**
+ * Команда выгрузки коллекции в файл в каталоге выгрузки сервера. Выгружается снимок коллекции на момент вызова,
+ * изменения коллекции во время выгрузки не блокируются и в файл не попадают. Люди записываются через один
+ * прямой буфер в {@link FileChannel}, поэтому память не зависит от размера коллекции.
+ * Форматы csv и jsonl содержат поля, которые читает команда import, а также id, дату создания и создателя.
+ * Формат binary: магическое число, версия формата, количество людей, люди в формате {@link DataCodec#writePerson}
+ */
+public class ExportCommand extends PeopleDatabaseCommand {
+
+    private static final int BUFFER_SIZE = 1 << 20, BINARY_MAGIC = 0x4C354558, BINARY_VERSION = 1;
+    private static final String[] KEYS = {"id", "name", "height", "passport", "eye_color", "nationality",
+            "location_x", "location_y", "location_z", "location_name", "coordinates_x", "coordinates_y",
+            "creation_date", "owner"};
+
+    public ExportCommand() {
+        super("export", false, "export {file} [csv|jsonl|binary] : выгрузить коллекцию в файл в каталоге выгрузки сервера, " +
+                "по умолчанию формат определяется по расширению файла");
+    }
+
+    @Override
+    public Object[] validate(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Недостаточно данных");
+            return null;
+        }
+        String format = args.length > 1 ? args[1].toLowerCase(Locale.ROOT) : formatOf(args[0]);
+        if (!format.equals("csv") && !format.equals("jsonl") && !format.equals("binary")) {
+            System.err.println("Формат должен быть csv, jsonl или binary");
+            return null;
+        }
+        return new Object[]{args[0], format, PlaceHolder.of(PeopleCollection.class)};
+    }
+
+    @Override
+    public CommandResult execute(Object[] args) {
+        String fileName = (String) args[0];
+        String format = (String) args[1];
+        PeopleCollection peopleCollection = (PeopleCollection) args[2];
+        Path dir = Paths.get(ConnectionProperties.getExportDir()).toAbsolutePath().normalize();
+        Path file = dir.resolve(fileName).normalize();
+        if (!file.startsWith(dir) || file.equals(dir)) {
+            Response response = DefaultResponse.FILE_NOT_FOUND;
+            return new CommandResult("Файл должен находиться в каталоге выгрузки сервера", response);
+        }
+        PersistentTreeSet<Person> people = peopleCollection.getCollection();
+        long start = System.nanoTime(), bytes;
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        try {
+            Files.createDirectories(dir);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                bytes = format.equals("binary") ? writeBinary(channel, buffer, people) : writeRecords(channel, buffer, people,
+                        format.equals("csv") ? RecordReader.Format.CSV : RecordReader.Format.JSONL);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return new CommandResult("Не удалось записать файл: " + e.getMessage(), DefaultResponse.UNKNOWN);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        return new CommandResult(String.format("Выгружено %d записей в %s (%s, %d байт) за %.2f с (%.0f записей/с)",
+                people.size(), fileName, format, bytes, seconds, seconds == 0 ? 0 : people.size() / seconds), DefaultResponse.OK);
+    }
+
+    private static long writeRecords(FileChannel channel, ByteBuffer buffer, PersistentTreeSet<Person> people,
+                                     RecordReader.Format format) throws IOException {
+        RecordWriter writer = new RecordWriter(channel, format, KEYS, buffer);
+        for (Person person : people) {
+            Location location = person.getLocation();
+            writer.write(person.getId(), person.getName(), person.getHeight(), person.getPassportID(),
+                    person.getEyeColor(), person.getNationality(),
+                    location == null ? null : location.getX(), location == null ? null : location.getY(),
+                    location == null ? null : location.getZ(), location == null ? null : location.getName(),
+                    person.getCoordinates().getX(), person.getCoordinates().getY(),
+                    person.getCreationDate(), person.getOwner());
+        }
+        writer.close();
+        return writer.getWritten();
+    }
+
+    private static long writeBinary(FileChannel channel, ByteBuffer buffer, PersistentTreeSet<Person> people) throws IOException {
+        BinaryWriter out = new BinaryWriter(buffer);
+        out.writeInt(BINARY_MAGIC).writeInt(BINARY_VERSION).writeInt(people.size());
+        long written = 0;
+        for (Person person : people) {
+            int position = out.position();
+            try {
+                DataCodec.writePerson(out, person);
+            } catch (BufferOverflowException e) {
+                out.rewind(position);
+                written += drain(channel, buffer);
+                DataCodec.writePerson(out, person);
+            }
+        }
+        return written + drain(channel, buffer);
+    }
+
+    private static long drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        long written = 0;
+        buffer.flip();
+        while (buffer.hasRemaining()) written += channel.write(buffer);
+        buffer.clear();
+        return written;
+    }
+
+    private static String formatOf(String fileName) {
+        String name = fileName.toLowerCase(Locale.ROOT);
+        if (name.endsWith(".bin")) return "binary";
+        return RecordReader.Format.of(name) == RecordReader.Format.JSONL ? "jsonl" : "csv";
+    }
+}
@@ -24,10 +24,7 @@ public class FilterContainsNameCommand extends PeopleDatabaseCommand {
         String name = (String) args[0];
         PeopleCollection peopleCollection = (PeopleCollection) args[1];
         StringBuilder result = new StringBuilder("Список людей, в имени которых содержится " + name + ":\n");
-        peopleCollection.getCollection()
-                .stream()
-                .filter(p -> p.getName().contains(name))
-                .forEach(p -> result.append(p.formatted()).append("\n"));
+        peopleCollection.findByName(name).forEach(p -> result.append(p.formatted()).append("\n"));
         return new CommandResult(result.toString(), DefaultResponse.OK);
     }
 }
@@ -0,0 +1,122 @@
+package common.commandline.pdcommands;
+
+import common.collection.PeopleCollection;
+import common.commandline.PlaceHolder;
+import common.commandline.response.CommandResult;
+import common.commandline.response.DefaultResponse;
+import common.commandline.response.Response;
+import common.commandline.response.SqlResponse;
+import common.data.Person;
+import common.net.ConnectionProperties;
+import common.session.Session;
+import common.store.PeopleStore;
+import common.store.StoreException;
+import common.util.RecordReader;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+
+/**
+ * Команда импорта людей из файла CSV или JSON Lines, лежащего на сервере в каталоге импорта.
+ * Записи читаются потоком и проверяются по тем же правилам, что и при вводе с консоли. Корректные записи
+ * сохраняются порциями одной операцией хранилища {@link PeopleStore#addAll}.
+ * Вставленные люди, в том числе из уже сохраненной части порции при ошибке, добавляются в коллекцию
+ * одним слиянием после импорта
+ */
+public class ImportCommand extends PeopleDatabaseCommand {
+
+    private static final int MAX_CHUNK_SIZE = 5000, MAX_REPORTED_ERRORS = 10;
+
+    public ImportCommand() {
+        super("import", false, "import {file} : добавить в коллекцию элементы из файла CSV или JSON Lines (.jsonl) " +
+                "в каталоге импорта сервера, поля: " + fieldNames());
+    }
+
+    @Override
+    public boolean isIdempotent() {
+        return false;
+    }
+
+    @Override
+    public Object[] validate(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Недостаточно данных");
+            return null;
+        }
+        return new Object[]{args[0], PlaceHolder.of(Session.class), PlaceHolder.of(PeopleCollection.class), PlaceHolder.of(PeopleStore.class)};
+    }
+
+    @Override
+    public CommandResult execute(Object[] args) {
+        String fileName = (String) args[0];
+        Session session = (Session) args[1];
+        PeopleCollection peopleCollection = (PeopleCollection) args[2];
+        PeopleStore store = (PeopleStore) args[3];
+        Path dir = Paths.get(ConnectionProperties.getImportDir()).toAbsolutePath().normalize();
+        Path file = dir.resolve(fileName).normalize();
+        if (!file.startsWith(dir) || !Files.isRegularFile(file)) {
+            Response response = SqlResponse.NOT_FOUND;
+            return new CommandResult("Файл " + fileName + " не найден в каталоге импорта сервера", response);
+        }
+        int chunkSize = Math.min(ConnectionProperties.getImportChunkSize(), MAX_CHUNK_SIZE);
+        long start = System.nanoTime();
+        List<Person> imported = new ArrayList<>();
+        List<Person> chunk = new ArrayList<>(chunkSize);
+        List<String> errors = new ArrayList<>();
+        int rejected = 0;
+        String failure = null;
+        try (RecordReader reader = new RecordReader(Files.newBufferedReader(file, StandardCharsets.UTF_8),
+                RecordReader.Format.of(fileName))) {
+            Map<String, String> record;
+            while (true) {
+                try {
+                    if ((record = reader.next()) == null) break;
+                    chunk.add(PeopleDatabaseCommands.parsePerson(record, session.getLogin()));
+                } catch (IllegalArgumentException e) {
+                    rejected++;
+                    if (errors.size() < MAX_REPORTED_ERRORS) errors.add("строка " + reader.getLine() + ": " + e.getMessage());
+                    continue;
+                }
+                if (chunk.size() == chunkSize) {
+                    store.addAll(chunk, session);
+                    imported.addAll(chunk);
+                    chunk.clear();
+                }
+            }
+            if (!chunk.isEmpty()) {
+                store.addAll(chunk, session);
+                imported.addAll(chunk);
+            }
+        } catch (IOException e) {
+            failure = "Не удалось прочитать файл: " + e.getMessage();
+        } catch (StoreException e) {
+            e.printStackTrace();
+            for (Person person : chunk) if (person.getId() != 0) imported.add(person);
+            failure = "Не удалось сохранить порцию: " + e.getMessage();
+        }
+        peopleCollection.addAll(imported);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        StringBuilder result = new StringBuilder(String.format("Импортировано %d записей за %.2f с (%.0f записей/с), отклонено %d",
+                imported.size(), seconds, seconds == 0 ? 0 : imported.size() / seconds, rejected));
+        for (String error : errors) result.append("\n\t").append(error);
+        if (rejected > errors.size()) result.append("\n\t...");
+        if (failure != null) {
+            result.append("\n").append(failure).append(", импорт остановлен, уже вставленные записи сохранены");
+            return new CommandResult(result.toString(), SqlResponse.UNKNOWN);
+        }
+        return new CommandResult(result.toString(), DefaultResponse.OK);
+    }
+
+    private static String fieldNames() {
+        StringJoiner names = new StringJoiner(", ");
+        for (PeopleDatabaseCommands.Field field : PeopleDatabaseCommands.Field.values()) names.add(field.getKey());
+        return names.toString();
+    }
+}
@@ -7,6 +7,8 @@ import common.util.UtilFunctions;
 
 import java.util.Arrays;
 import java.util.Locale;
+import java.util.Map;
+import java.util.function.Predicate;
 
 /**
  * Класс объявления всех команд, связанных с манипуляциями над объектом класса PeopleDatabase
@@ -22,23 +24,69 @@ public final class PeopleDatabaseCommands {
 
     private PeopleDatabaseCommands() {}
 
+    /**
+     * Поля человека с правилами их проверки, общими для ввода с консоли и импорта из файла
+     */
+    public enum Field {
+        NAME("name", "Введите 1-50 символов", input -> !input.isEmpty() && input.length() <= 50),
+        HEIGHT("height", "Введите целое число в диапазоне [1; 2 147 483 647] или ничего", input -> {
+            Integer result = UtilFunctions.intOrNull(input);
+            return result != null && result > 0 || input.isEmpty();
+        }),
+        PASSPORT("passport", "Введите 8-50 символов или ничего",
+                input -> (input.length() >= 8 && input.length() <= 50) || input.isEmpty()),
+        EYE_COLOR("eye_color", "Введите один из предложенных цветов",
+                input -> UtilFunctions.enumOrNull(input.toUpperCase(Locale.ROOT), Color.class) != null),
+        NATIONALITY("nationality", "Введите одну из предложенных стран",
+                input -> UtilFunctions.enumOrNull(input.toUpperCase(Locale.ROOT), Country.class) != null),
+        LOCATION_X("location_x", "Введите дробное число типа double", input -> UtilFunctions.doubleOrNull(input) != null),
+        LOCATION_Y("location_y", "Введите дробное число типа float", input -> UtilFunctions.floatOrNull(input) != null),
+        LOCATION_Z("location_z", "Введите целое число типа long", input -> UtilFunctions.longOrNull(input) != null),
+        LOCATION_NAME("location_name", "Введите 1-50 символов или ничего", input -> input.length() <= 50),
+        COORDINATES_X("coordinates_x", "Введите дробное число типа float", input -> UtilFunctions.floatOrNull(input) != null),
+        COORDINATES_Y("coordinates_y", "Введите дробное число типа float, большее -816", input -> {
+            Float result = UtilFunctions.floatOrNull(input);
+            return result != null && result > -816F;
+        });
+
+        private final String key, hint;
+        private final Predicate<String> rule;
+
+        Field(String key, String hint, Predicate<String> rule) {
+            this.key = key;
+            this.hint = hint;
+            this.rule = rule;
+        }
+
+        /**
+         * @return Имя поля в импортируемых файлах
+         */
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * @return Значение поля записи, отсутствующее поле считается пустым
+         * @throws IllegalArgumentException если значение не проходит проверку
+         */
+        private String of(Map<String, String> record) {
+            String value = record.getOrDefault(key, "").trim();
+            if (!rule.test(value)) throw new IllegalArgumentException(String.format("%s: %s", key, hint));
+            return value;
+        }
+    }
+
     public static Person createPerson() {
         System.out.println("Создание нового объекта класса Person");
-        String name = CMD.awaitInput("Введите имя:", "Введите 1-50 символов",
-                input -> !input.isEmpty() && input.length() <= 50);
-        Integer height = CMD.awaitInput("Введите рост:", "Введите целое число в диапазоне [1; 2 147 483 647] или ничего",
-                input -> {
-                    Integer result = UtilFunctions.intOrNull(input);
-                    return result != null && result > 0 || input.isEmpty();
-                }, input -> input.isEmpty() ? null : Integer.parseInt(input));
-        String passportID = CMD.awaitInput("Введите номер паспорта:", "Введите 8-50 символов или ничего",
-                input -> (input.length() >= 8 && input.length() <= 50) || input.isEmpty(), input -> input.isEmpty() ? null : input);
-        Color eyeColor = CMD.awaitInput("Введите цвет глаз " + COLORS + ":", "Введите один из предложенных цветов",
-                input -> UtilFunctions.enumOrNull(input.toUpperCase(Locale.ROOT), Color.class) != null,
+        String name = CMD.awaitInput("Введите имя:", Field.NAME.hint, Field.NAME.rule);
+        Integer height = CMD.awaitInput("Введите рост:", Field.HEIGHT.hint, Field.HEIGHT.rule,
+                input -> input.isEmpty() ? null : Integer.parseInt(input));
+        String passportID = CMD.awaitInput("Введите номер паспорта:", Field.PASSPORT.hint, Field.PASSPORT.rule,
+                input -> input.isEmpty() ? null : input);
+        Color eyeColor = CMD.awaitInput("Введите цвет глаз " + COLORS + ":", Field.EYE_COLOR.hint, Field.EYE_COLOR.rule,
                 input -> Color.valueOf(input.toUpperCase(Locale.ROOT)));
-        Country nationality = CMD.awaitInput("Введите национальность " + COUNTRIES + ":", "Введите одну из предложенных стран",
-                input -> UtilFunctions.enumOrNull(input.toUpperCase(Locale.ROOT), Country.class) != null,
-                input -> Country.valueOf(input.toUpperCase(Locale.ROOT)));
+        Country nationality = CMD.awaitInput("Введите национальность " + COUNTRIES + ":", Field.NATIONALITY.hint,
+                Field.NATIONALITY.rule, input -> Country.valueOf(input.toUpperCase(Locale.ROOT)));
         Location location = createLocation();
         Coordinates coordinates = createCoordinates();
         return new Person(name, coordinates, height, passportID, eyeColor, nationality, location, CommandLineHandler.getUser());
@@ -46,26 +94,40 @@ public final class PeopleDatabaseCommands {
 
     public static Location createLocation() {
         System.out.println("Создание нового объекта класса Location");
-        double x = CMD.awaitInput("Введите x:", "Введите дробное число типа double",
-                input -> UtilFunctions.doubleOrNull(input) != null, Double::parseDouble);
-        float y = CMD.awaitInput("Введите y:", "Введите дробное число типа float",
-                input -> UtilFunctions.floatOrNull(input) != null, Float::parseFloat);
-        long z = CMD.awaitInput("Введите z:", "Введите целое число типа long",
-                input -> UtilFunctions.longOrNull(input) != null, Long::parseLong);
-        String name = CMD.awaitInput("Введите название:", "Введите 1-50 символов или ничего",
-                input -> input.length() <= 50, input -> input.isEmpty() ? null : input);
+        double x = CMD.awaitInput("Введите x:", Field.LOCATION_X.hint, Field.LOCATION_X.rule, Double::parseDouble);
+        float y = CMD.awaitInput("Введите y:", Field.LOCATION_Y.hint, Field.LOCATION_Y.rule, Float::parseFloat);
+        long z = CMD.awaitInput("Введите z:", Field.LOCATION_Z.hint, Field.LOCATION_Z.rule, Long::parseLong);
+        String name = CMD.awaitInput("Введите название:", Field.LOCATION_NAME.hint, Field.LOCATION_NAME.rule,
+                input -> input.isEmpty() ? null : input);
         return new Location(x, y, z, name);
     }
 
     public static Coordinates createCoordinates() {
         System.out.println("Создание нового объекта класса Coordinates");
-        float x = CMD.awaitInput("Введите x:", "Введите дробное число типа float",
-                input -> UtilFunctions.floatOrNull(input) != null, Float::parseFloat);
-        float y = CMD.awaitInput("Введите y:", "Введите дробное число типа float, большее -816",
-                input -> {
-                    Float result = UtilFunctions.floatOrNull(input);
-                    return result != null && result > -816F;
-                }, Float::parseFloat);
+        float x = CMD.awaitInput("Введите x:", Field.COORDINATES_X.hint, Field.COORDINATES_X.rule, Float::parseFloat);
+        float y = CMD.awaitInput("Введите y:", Field.COORDINATES_Y.hint, Field.COORDINATES_Y.rule, Float::parseFloat);
         return new Coordinates(x, y);
     }
+
+    /**
+     * Создает человека из записи импортируемого файла по тем же правилам, что и при вводе с консоли
+     *
+     * @param record Значения полей по их именам {@link Field#getKey()}
+     * @throws IllegalArgumentException если значение какого-либо поля не проходит проверку
+     */
+    public static Person parsePerson(Map<String, String> record, String owner) {
+        String name = Field.NAME.of(record);
+        String height = Field.HEIGHT.of(record);
+        String passportID = Field.PASSPORT.of(record);
+        Color eyeColor = Color.valueOf(Field.EYE_COLOR.of(record).toUpperCase(Locale.ROOT));
+        Country nationality = Country.valueOf(Field.NATIONALITY.of(record).toUpperCase(Locale.ROOT));
+        String locationName = Field.LOCATION_NAME.of(record);
+        Location location = new Location(Double.parseDouble(Field.LOCATION_X.of(record)),
+                Float.parseFloat(Field.LOCATION_Y.of(record)), Long.parseLong(Field.LOCATION_Z.of(record)),
+                locationName.isEmpty() ? null : locationName);
+        Coordinates coordinates = new Coordinates(Float.parseFloat(Field.COORDINATES_X.of(record)),
+                Float.parseFloat(Field.COORDINATES_Y.of(record)));
+        return new Person(name, coordinates, height.isEmpty() ? null : Integer.parseInt(height),
+                passportID.isEmpty() ? null : passportID, eyeColor, nationality, location, owner);
+    }
 }
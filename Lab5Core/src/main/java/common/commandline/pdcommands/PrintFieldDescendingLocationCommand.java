@@ -5,28 +5,35 @@ import common.commandline.PlaceHolder;
 import common.commandline.response.CommandResult;
 import common.commandline.response.DefaultResponse;
 import common.data.Person;
+import common.util.UtilFunctions;
 
-import java.util.Collections;
+import java.util.Iterator;
 
 public class PrintFieldDescendingLocationCommand extends PeopleDatabaseCommand {
     public PrintFieldDescendingLocationCommand() {
-        super("print_field_descending_location", false, "print_field_descending_location : вывести значения поля location всех элементов в порядке убывания");
+        super("print_field_descending_location", false, "print_field_descending_location [limit] : вывести значения поля location всех элементов (или первых limit) в порядке убывания");
     }
 
     @Override
     public Object[] validate(String[] args) {
-        return new Object[]{PlaceHolder.of(PeopleCollection.class)};
+        Integer limit = null;
+        if (args.length > 0) {
+            limit = UtilFunctions.intOrNull(args[0]);
+            if (limit == null || limit < 0) {
+                System.err.println("Количество локаций должно быть неотрицательным целым числом");
+                return null;
+            }
+        }
+        return new Object[]{PlaceHolder.of(PeopleCollection.class), limit};
     }
 
     @Override
     public CommandResult execute(Object[] args) {
         PeopleCollection peopleCollection = (PeopleCollection) args[0];
+        int limit = args.length > 1 && args[1] != null ? (int) args[1] : Integer.MAX_VALUE;
         StringBuilder result = new StringBuilder("Список локаций в порядке убывания:\n");
-        peopleCollection.getCollection()
-                .stream()
-                .map(Person::getLocation)
-                .sorted(Collections.reverseOrder())
-                .forEach(loc -> result.append(loc).append("\n"));
+        Iterator<Person> people = peopleCollection.getByLocation().descendingIterator();
+        for (int i = 0; i < limit && people.hasNext(); i++) result.append(people.next().getLocation()).append("\n");
         return new CommandResult(result.toString(), DefaultResponse.OK);
     }
 }
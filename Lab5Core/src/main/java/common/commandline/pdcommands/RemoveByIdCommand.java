@@ -1,25 +1,30 @@
 package common.commandline.pdcommands;
 
 import common.collection.PeopleCollection;
-import common.commandline.CommandLineHandler;
 import common.commandline.PlaceHolder;
 import common.commandline.response.*;
+import common.session.Session;
+import common.store.PeopleStore;
+import common.store.StoreException;
+import common.store.WriteBehind;
 import common.util.UtilFunctions;
 
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.SQLException;
-
 public class RemoveByIdCommand extends PeopleDatabaseCommand {
     public RemoveByIdCommand() {
         super("remove_by_id", false, "remove_by_id {id} : удалить элемент из коллекции по его {id}");
     }
 
+    @Override
+    public boolean isIdempotent() {
+        return false;
+    }
+
     @Override
     public Object[] validate(String[] args) {
         if (PeopleDatabaseCommand.validateId(args)) {
             Long id = UtilFunctions.longOrNull(args[0]);
-            return new Object[]{id, CommandLineHandler.getUser(), PlaceHolder.of(PeopleCollection.class), PlaceHolder.of(Connection.class)};
+            return new Object[]{id, PlaceHolder.of(Session.class), PlaceHolder.of(PeopleCollection.class),
+                    PlaceHolder.of(PeopleStore.class), PlaceHolder.of(WriteBehind.class)};
         }
         return null;
     }
@@ -27,27 +32,27 @@ public class RemoveByIdCommand extends PeopleDatabaseCommand {
     @Override
     public CommandResult execute(Object[] args) {
         long id = (long) args[0];
-        String owner = (String) args[1];
+        Session session = (Session) args[1];
         PeopleCollection peopleCollection = (PeopleCollection) args[2];
-        Connection connection = (Connection) args[3];
+        if (args.length > 4 && args[4] instanceof WriteBehind) {
+            boolean removed = ((WriteBehind) args[4]).removeById(peopleCollection, id, session);
+            return result(removed ? SqlResponse.OK : SqlResponse.NOT_FOUND);
+        }
+        PeopleStore store = (PeopleStore) args[3];
         Response response;
         try {
-            PreparedStatement statement = connection.prepareStatement(
-                        "DELETE FROM people USING users " +
-                            "WHERE users.id = owner_id AND people.id = ? AND (login = ? OR is_admin);"
-            );
-            statement.setLong(1, id);
-            statement.setString(2, owner);
-            int result = statement.executeUpdate();
-            response = result > 0 ? SqlResponse.OK : SqlResponse.NOT_FOUND;
-            connection.commit();
-        } catch (SQLException e) {
+            response = store.removeById(id, session) ? SqlResponse.OK : SqlResponse.NOT_FOUND;
+        } catch (StoreException e) {
             e.printStackTrace();
             response = SqlResponse.UNKNOWN;
             return new CommandResult(response.getMsg(), response);
         }
         if (response == SqlResponse.OK)
-            peopleCollection.getCollection().removeIf(p -> p.getId().equals(id));
+            peopleCollection.removeById(id);
+        return result(response);
+    }
+
+    private static CommandResult result(Response response) {
         String msg = response == SqlResponse.NOT_FOUND ?
                 "Человека с таким id не существует, либо вы не имеете права на его модификацию" : response.getMsg();
         return new CommandResult(msg, response);
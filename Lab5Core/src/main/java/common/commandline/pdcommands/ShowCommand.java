@@ -1,25 +1,52 @@
 package common.commandline.pdcommands;
 
 import common.collection.PeopleCollection;
+import common.collection.PersistentTreeSet;
 import common.commandline.PlaceHolder;
 import common.commandline.response.CommandResult;
 import common.commandline.response.DefaultResponse;
+import common.data.Person;
+import common.util.UtilFunctions;
+
+import java.util.Iterator;
 
 public class ShowCommand extends PeopleDatabaseCommand {
     public ShowCommand() {
-        super("show", false, "show : вывести в стандартный поток вывода все элементы коллекции в строковом представлении");
+        super("show", false, "show [offset] [limit] : вывести в стандартный поток вывода все элементы коллекции " +
+                "(или limit элементов, начиная с номера offset) в строковом представлении");
     }
 
     @Override
     public Object[] validate(String[] args) {
-        return new Object[]{PlaceHolder.of(PeopleCollection.class)};
+        Integer offset = null, limit = null;
+        if (args.length > 0) {
+            offset = UtilFunctions.intOrNull(args[0]);
+            limit = args.length > 1 ? UtilFunctions.intOrNull(args[1]) : Integer.valueOf(Integer.MAX_VALUE);
+            if (offset == null || offset < 0 || limit == null || limit < 0) {
+                System.err.println("Номер первого элемента и количество элементов должны быть неотрицательными целыми числами");
+                return null;
+            }
+        }
+        return new Object[]{PlaceHolder.of(PeopleCollection.class), offset, limit};
     }
 
     @Override
     public CommandResult execute(Object[] args) {
         PeopleCollection peopleCollection = (PeopleCollection) args[0];
-        StringBuilder result = new StringBuilder("Элементы коллекции:\n");
-        peopleCollection.getCollection().forEach(p -> result.append(p.formatted()));
-        return new CommandResult(result.toString(), DefaultResponse.OK);
+        PersistentTreeSet<Person> people = peopleCollection.getCollection();
+        if (args.length < 3 || args[1] == null) {
+            StringBuilder result = new StringBuilder("Элементы коллекции:\n");
+            people.forEach(p -> result.append(p.formatted()));
+            return new CommandResult(result.toString(), DefaultResponse.OK);
+        }
+        int offset = (int) args[1], limit = (int) args[2];
+        StringBuilder page = new StringBuilder();
+        int shown = 0;
+        for (Iterator<Person> iterator = people.iterator(offset); shown < limit && iterator.hasNext(); shown++)
+            page.append(iterator.next().formatted());
+        String header = shown == 0
+                ? String.format("Нет элементов с номера %d, всего элементов %d\n", offset, people.size())
+                : String.format("Элементы коллекции с %d по %d из %d:\n", offset, offset + shown - 1, people.size());
+        return new CommandResult(header + page, DefaultResponse.OK);
     }
 }
@@ -0,0 +1,27 @@
+package common.commandline.pdcommands;
+
+import common.collection.PeopleCollection;
+import common.commandline.PlaceHolder;
+import common.commandline.response.CommandResult;
+import common.commandline.response.DefaultResponse;
+import common.session.Session;
+
+public class ShowMineCommand extends PeopleDatabaseCommand {
+    public ShowMineCommand() {
+        super("show_mine", false, "show_mine : вывести в стандартный поток вывода все элементы коллекции, созданные пользователем");
+    }
+
+    @Override
+    public Object[] validate(String[] args) {
+        return new Object[]{PlaceHolder.of(Session.class), PlaceHolder.of(PeopleCollection.class)};
+    }
+
+    @Override
+    public CommandResult execute(Object[] args) {
+        Session session = (Session) args[0];
+        PeopleCollection peopleCollection = (PeopleCollection) args[1];
+        StringBuilder result = new StringBuilder("Элементы коллекции, созданные пользователем " + session.getLogin() + ":\n");
+        peopleCollection.getByOwner(session.getLogin()).forEach(p -> result.append(p.formatted()));
+        return new CommandResult(result.toString(), DefaultResponse.OK);
+    }
+}
@@ -0,0 +1,62 @@
+package common.commandline.pdcommands;
+
+import common.collection.PageCursor;
+import common.collection.PeopleCollection;
+import common.commandline.PlaceHolder;
+import common.commandline.response.CommandResult;
+import common.commandline.response.DefaultResponse;
+import common.data.Person;
+import common.session.Session;
+import common.util.UtilFunctions;
+
+import java.util.List;
+
+public class ShowNextCommand extends PeopleDatabaseCommand {
+
+    private static final int DEFAULT_PAGE_SIZE = 20;
+
+    public ShowNextCommand() {
+        super("show_next", false, "show_next [limit] : вывести следующие limit элементов коллекции (по умолчанию " +
+                DEFAULT_PAGE_SIZE + "), просмотр ведется по снимку коллекции на момент первого вызова");
+    }
+
+    @Override
+    public boolean isIdempotent() {
+        return false;
+    }
+
+    @Override
+    public Object[] validate(String[] args) {
+        int limit = DEFAULT_PAGE_SIZE;
+        if (args.length > 0) {
+            Integer value = UtilFunctions.intOrNull(args[0]);
+            if (value == null || value <= 0) {
+                System.err.println("Количество элементов должно быть положительным целым числом");
+                return null;
+            }
+            limit = value;
+        }
+        return new Object[]{limit, PlaceHolder.of(Session.class), PlaceHolder.of(PeopleCollection.class)};
+    }
+
+    @Override
+    public CommandResult execute(Object[] args) {
+        int limit = (int) args[0];
+        Session session = (Session) args[1];
+        PeopleCollection peopleCollection = (PeopleCollection) args[2];
+        PageCursor cursor = session.getCursor();
+        if (cursor == null || cursor.isExpired() || cursor.isExhausted()) {
+            cursor = new PageCursor(peopleCollection.getCollection());
+            session.setCursor(cursor);
+        }
+        int from = cursor.getPosition();
+        List<Person> page = cursor.next(limit);
+        StringBuilder result = new StringBuilder(page.isEmpty()
+                ? "Коллекция пуста\n"
+                : String.format("Элементы коллекции с %d по %d из %d:\n", from, from + page.size() - 1, cursor.getSize()));
+        page.forEach(p -> result.append(p.formatted()));
+        if (cursor.isExhausted() && !page.isEmpty())
+            result.append("Достигнут конец коллекции, следующий вызов начнет просмотр заново\n");
+        return new CommandResult(result.toString(), DefaultResponse.OK);
+    }
+}
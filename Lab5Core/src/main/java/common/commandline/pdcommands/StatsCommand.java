@@ -0,0 +1,23 @@
+package common.commandline.pdcommands;
+
+import common.collection.PeopleCollection;
+import common.commandline.PlaceHolder;
+import common.commandline.response.CommandResult;
+import common.commandline.response.DefaultResponse;
+
+public class StatsCommand extends PeopleDatabaseCommand {
+    public StatsCommand() {
+        super("stats", false, "stats : вывести статистику коллекции (рост, количество людей по национальностям, цветам глаз и создателям)");
+    }
+
+    @Override
+    public Object[] validate(String[] args) {
+        return new Object[]{PlaceHolder.of(PeopleCollection.class)};
+    }
+
+    @Override
+    public CommandResult execute(Object[] args) {
+        PeopleCollection peopleCollection = (PeopleCollection) args[0];
+        return new CommandResult(peopleCollection.getStatistics().formatted(), DefaultResponse.OK);
+    }
+}
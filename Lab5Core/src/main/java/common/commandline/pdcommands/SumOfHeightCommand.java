@@ -18,10 +18,7 @@ public class SumOfHeightCommand extends PeopleDatabaseCommand {
     @Override
     public CommandResult execute(Object[] args) {
         PeopleCollection peopleCollection = (PeopleCollection) args[0];
-        String sum = "Сумма ростов всех людей в коллекции - " + peopleCollection.getCollection()
-                .stream()
-                .mapToInt(p -> p.getHeight() == null ? 0 : p.getHeight())
-                .sum();
+        String sum = "Сумма ростов всех людей в коллекции - " + peopleCollection.getStatistics().getHeightSum();
         return new CommandResult(sum, DefaultResponse.OK);
     }
 }
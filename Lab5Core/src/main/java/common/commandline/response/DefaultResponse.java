@@ -9,7 +9,8 @@ public enum DefaultResponse implements Response {
     CLASS_NOT_FOUND("Класс не найден"),
     TYPE_ERROR("Получен ответ не того типа"),
     HOST_NOT_FOUND("Сервер не найден"),
-    UNKNOWN("Неизвестная ошибка");
+    UNKNOWN("Неизвестная ошибка"),
+    UNAUTHORIZED("Сессия недействительна, необходимо войти повторно");
 
     private final String msg;
 
@@ -0,0 +1,18 @@
+package common.commandline.response;
+
+/**
+ * Класс результата входа, содержит токен сессии, который клиент передает с каждым запросом
+ */
+public class LogInResult extends CommandResult {
+
+    private final long token;
+
+    public LogInResult(String value, Response response, long token) {
+        super(value, response);
+        this.token = token;
+    }
+
+    public long getToken() {
+        return token;
+    }
+}
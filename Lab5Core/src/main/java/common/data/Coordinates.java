@@ -30,12 +30,18 @@ public class Coordinates implements Comparable<Coordinates>, Serializable {
         this.y = y;
     }
 
-    private double distance() {
-        return Math.sqrt(x * x + y * y);
+    /**
+     * Метод, вычисляющий квадрат расстояния до точки (0; 0), который упорядочивает координаты
+     * так же, как само расстояние
+     *
+     * @return Квадрат расстояния типа double
+     */
+    private double squaredDistance() {
+        return x * x + y * y;
     }
 
     @Override
     public int compareTo(Coordinates other) {
-        return Double.compare(this.distance(), other.distance());
+        return Double.compare(this.squaredDistance(), other.squaredDistance());
     }
 }
@@ -3,7 +3,8 @@ package common.data;
 import lombok.*;
 
 import java.io.Serializable;
-import java.util.Comparator;
+
+import static common.util.UtilFunctions.compareNullsFirst;
 
 /**
  * Класс данных местоположения, реализует сортировку по умолчанию
@@ -54,17 +55,18 @@ public class Location implements Comparable<Location>, Serializable {
      */
     @Override
     public int compareTo(Location other) {
-        return Comparator.comparing(Location::getName, Comparator.nullsFirst(String::compareTo))
-                .thenComparing(Location::distance)
-                .compare(this, other);
+        int result = compareNullsFirst(name, other.name);
+        if (result != 0) return result;
+        return Double.compare(squaredDistance(), other.squaredDistance());
     }
 
     /**
-     * Метод, вычисляющий расстояние до точки (0; 0; 0)
+     * Метод, вычисляющий квадрат расстояния до точки (0; 0; 0). Квадрат упорядочивает
+     * местоположения так же, как само расстояние, но не требует извлечения корня
      *
-     * @return Расстояние типа double
+     * @return Квадрат расстояния типа double
      */
-    private double distance() {
-        return Math.sqrt(x * x + y * y + z * z);
+    private double squaredDistance() {
+        return x * x + y * y + z * z;
     }
 }
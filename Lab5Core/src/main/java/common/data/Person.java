@@ -6,6 +6,8 @@ import java.io.Serializable;
 import java.time.LocalDate;
 import java.util.*;
 
+import static common.util.UtilFunctions.compareNullsFirst;
+
 /**
  * Класс данных человека, реализует сортировку по умолчанию по имени, номеру паспорта,
  * росту, национальности, местоположению и цвету глаз
@@ -101,6 +103,20 @@ public class Person implements Comparable<Person>, Serializable {
         this.setPassportID(newPerson.passportID);
     }
 
+    /**
+     * Метод, создающий копию человека со значениями полей другого (кроме {@link #id}, {@link #creationDate}
+     * и {@link #owner}). Сам человек не меняется, поэтому он остается корректным в уже выданных снимках коллекции
+     *
+     * @param newPerson человек, чьи поля будут присвоены копии
+     * @return Обновленная копия человека
+     */
+    public Person updated(Person newPerson) {
+        Person person = new Person(id, newPerson.name, newPerson.coordinates, newPerson.height, newPerson.passportID,
+                newPerson.eyeColor, newPerson.nationality, newPerson.location, owner);
+        person.creationDate = creationDate;
+        return person;
+    }
+
     public String formatted() {
         return String.format("Человек %s:\n" +
                         "\tИмя: %s\n" +
@@ -126,22 +142,23 @@ public class Person implements Comparable<Person>, Serializable {
     /**
      * Переопределенный метод сравнения двух людей,
      * сравнение производится по имени, номеру паспорта,
-     * росту, национальности, местоположению и цвету глаз
+     * росту, дате создания, национальности, местоположению, координатам, цвету глаз и id.
+     * Сравнение выполняется при каждой вставке в коллекцию, поэтому оно не создает объектов
      *
      * @param other Объект для сравнения
      * @return Целое число - результат сравнения
      */
     @Override
     public int compareTo(Person other) {
-        return Comparator.comparing(Person::getName)
-                .thenComparing(Person::getPassportID, Comparator.nullsFirst(String::compareTo))
-                .thenComparing(Person::getHeight, Comparator.nullsFirst(Integer::compareTo))
-                .thenComparing(Person::getCreationDate)
-                .thenComparing(p -> p.getNationality().toString())
-                .thenComparing(Person::getLocation)
-                .thenComparing(Person::getCoordinates)
-                .thenComparing(p -> p.getEyeColor().toString())
-                .thenComparing(Person::getId)
-                .compare(this, other);
+        int result = name.compareTo(other.name);
+        if (result != 0) return result;
+        if ((result = compareNullsFirst(passportID, other.passportID)) != 0) return result;
+        if ((result = compareNullsFirst(height, other.height)) != 0) return result;
+        if ((result = creationDate.compareTo(other.creationDate)) != 0) return result;
+        if ((result = nationality.name().compareTo(other.nationality.name())) != 0) return result;
+        if ((result = compareNullsFirst(location, other.location)) != 0) return result;
+        if ((result = coordinates.compareTo(other.coordinates)) != 0) return result;
+        if ((result = eyeColor.name().compareTo(other.eyeColor.name())) != 0) return result;
+        return id.compareTo(other.id);
     }
 }
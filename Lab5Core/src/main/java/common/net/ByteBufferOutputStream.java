@@ -0,0 +1,35 @@
+package common.net;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Поток вывода, записывающий данные напрямую в {@link ByteBuffer} фиксированного размера,
+ * при нехватке места бросает {@link IOException}
+ */
+public class ByteBufferOutputStream extends OutputStream {
+
+    private final ByteBuffer buffer;
+
+    public ByteBufferOutputStream(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureRemaining(1);
+        buffer.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] bytes, int off, int len) throws IOException {
+        ensureRemaining(len);
+        buffer.put(bytes, off, len);
+    }
+
+    private void ensureRemaining(int count) throws IOException {
+        if (buffer.remaining() < count)
+            throw new IOException(String.format("Данные не помещаются в буфер размером %d байт", buffer.capacity()));
+    }
+}
@@ -1,9 +1,11 @@
 package common.net;
 
+import common.net.protocol.WireFormat;
 import common.util.UtilFunctions;
 
 import java.io.*;
 import java.net.URL;
+import java.util.Locale;
 import java.util.Properties;
 import java.util.function.Function;
 import java.util.logging.Logger;
@@ -14,10 +16,44 @@ public final class ConnectionProperties {
     public static final Properties properties = new Properties();
     public static final Logger logger = UtilFunctions.getLogger(ConnectionProperties.class, "common");
     public static final int     DEFAULT_PORT = 1234,
-                                DEFAULT_DB_PORT = 5432;
+                                DEFAULT_DB_PORT = 5432,
+                                DEFAULT_WORKER_THREADS = Runtime.getRuntime().availableProcessors(),
+                                DEFAULT_QUEUE_CAPACITY = 1024,
+                                DEFAULT_RECEIVE_BUFFER_SIZE = 4 * 1024 * 1024,
+                                DEFAULT_SEND_BUFFER_SIZE = 1024 * 1024,
+                                DEFAULT_BUFFER_POOL_SIZE = 256,
+                                DEFAULT_FRAGMENT_SIZE = 8192,
+                                DEFAULT_RETRANSMIT_BUFFER_SIZE = 64 * 1024 * 1024,
+                                DEFAULT_IDEMPOTENCY_CACHE_SIZE = 4096,
+                                DEFAULT_COMPRESSION_THRESHOLD = 1024,
+                                DEFAULT_DB_POOL_MIN_SIZE = 2,
+                                DEFAULT_DB_POOL_MAX_SIZE = 10,
+                                DEFAULT_DB_POOL_ACQUIRE_TIMEOUT = 5_000,
+                                DEFAULT_DB_POOL_IDLE_TIMEOUT = 300_000,
+                                DEFAULT_DB_POOL_LEAK_THRESHOLD = 60_000,
+                                DEFAULT_STATEMENT_CACHE_SIZE = 32,
+                                DEFAULT_DB_FETCH_SIZE = 1000,
+                                DEFAULT_DB_LOAD_PARTITIONS = 1,
+                                DEFAULT_SNAPSHOT_INTERVAL = 300,
+                                DEFAULT_WRITE_BEHIND_BATCH_SIZE = 256,
+                                DEFAULT_WRITE_BEHIND_FLUSH_INTERVAL = 50,
+                                DEFAULT_IMPORT_CHUNK_SIZE = 1000,
+                                DEFAULT_STORE_SEGMENT_SIZE = 64 * 1024 * 1024,
+                                DEFAULT_STORE_COMPACTION_INTERVAL = 600;
+    public static final boolean DEFAULT_PIPELINE = true,
+                                DEFAULT_COMPRESSION = true,
+                                DEFAULT_WRITE_BEHIND = false,
+                                DEFAULT_EARLY_WRITE_ACK = false,
+                                DEFAULT_LOG_STORE = false;
+    public static final WireFormat DEFAULT_WIRE_FORMAT = WireFormat.BINARY;
     public static final String  DEFAULT_HOST = "localhost",
                                 DEFAULT_DB_HOST = "pg",
-                                DEFAULT_DB_NAME = "studs";
+                                DEFAULT_DB_NAME = "studs",
+                                DEFAULT_DB_POOL_VALIDATION_QUERY = "SELECT 1",
+                                DEFAULT_SNAPSHOT_FILE = "people.snapshot",
+                                DEFAULT_IMPORT_DIR = "import",
+                                DEFAULT_EXPORT_DIR = "export",
+                                DEFAULT_STORE_DIR = "store";
     public static final String FILE_NAME = "connection.properties";
 
     static {
@@ -85,6 +121,205 @@ public final class ConnectionProperties {
         return String.format("jdbc:postgresql://%s:%s/%s", host, port, name);
     }
 
+    public static WireFormat getWireFormat() {
+        return getTransformedProperty("protocol", DEFAULT_WIRE_FORMAT, s -> {
+            WireFormat result = UtilFunctions.enumOrNull(s.toUpperCase(Locale.ROOT), WireFormat.class);
+            if (result == null) {
+                logger.info("protocol должен быть binary или serialization, используем значение по умолчанию " + DEFAULT_WIRE_FORMAT);
+                return DEFAULT_WIRE_FORMAT;
+            }
+            return result;
+        });
+    }
+
+    public static boolean isPipelineEnabled() {
+        return getTransformedProperty("pipeline", DEFAULT_PIPELINE, Boolean::parseBoolean);
+    }
+
+    public static boolean isCompressionEnabled() {
+        return getTransformedProperty("compression", DEFAULT_COMPRESSION, Boolean::parseBoolean);
+    }
+
+    public static int getCompressionThreshold() {
+        return getPositiveIntProperty("compression_threshold", DEFAULT_COMPRESSION_THRESHOLD);
+    }
+
+    public static int getWorkerThreads() {
+        return getPositiveIntProperty("worker_threads", DEFAULT_WORKER_THREADS);
+    }
+
+    public static int getQueueCapacity() {
+        return getPositiveIntProperty("queue_capacity", DEFAULT_QUEUE_CAPACITY);
+    }
+
+    public static int getReceiveBufferSize() {
+        return getPositiveIntProperty("receive_buffer_size", DEFAULT_RECEIVE_BUFFER_SIZE);
+    }
+
+    public static int getSendBufferSize() {
+        return getPositiveIntProperty("send_buffer_size", DEFAULT_SEND_BUFFER_SIZE);
+    }
+
+    public static int getBufferPoolSize() {
+        return getPositiveIntProperty("buffer_pool_size", DEFAULT_BUFFER_POOL_SIZE);
+    }
+
+    public static int getFragmentSize() {
+        return getPositiveIntProperty("fragment_size", DEFAULT_FRAGMENT_SIZE);
+    }
+
+    public static int getRetransmitBufferSize() {
+        return getPositiveIntProperty("retransmit_buffer_size", DEFAULT_RETRANSMIT_BUFFER_SIZE);
+    }
+
+    public static int getIdempotencyCacheSize() {
+        return getPositiveIntProperty("idempotency_cache_size", DEFAULT_IDEMPOTENCY_CACHE_SIZE);
+    }
+
+    public static int getDbPoolMinSize() {
+        return getPositiveIntProperty("db_pool_min_size", DEFAULT_DB_POOL_MIN_SIZE);
+    }
+
+    public static int getDbPoolMaxSize() {
+        return getPositiveIntProperty("db_pool_max_size", DEFAULT_DB_POOL_MAX_SIZE);
+    }
+
+    public static int getDbPoolAcquireTimeout() {
+        return getPositiveIntProperty("db_pool_acquire_timeout", DEFAULT_DB_POOL_ACQUIRE_TIMEOUT);
+    }
+
+    public static int getDbPoolIdleTimeout() {
+        return getPositiveIntProperty("db_pool_idle_timeout", DEFAULT_DB_POOL_IDLE_TIMEOUT);
+    }
+
+    public static int getDbPoolLeakThreshold() {
+        return getPositiveIntProperty("db_pool_leak_threshold", DEFAULT_DB_POOL_LEAK_THRESHOLD);
+    }
+
+    public static int getStatementCacheSize() {
+        return getPositiveIntProperty("statement_cache_size", DEFAULT_STATEMENT_CACHE_SIZE);
+    }
+
+    public static int getDbFetchSize() {
+        return getPositiveIntProperty("db_fetch_size", DEFAULT_DB_FETCH_SIZE);
+    }
+
+    public static int getDbLoadPartitions() {
+        return getPositiveIntProperty("db_load_partitions", DEFAULT_DB_LOAD_PARTITIONS);
+    }
+
+    /**
+     * @return true, если изменения коллекции записываются в базу данных отложенно, пакетами
+     */
+    public static boolean isWriteBehindEnabled() {
+        return getTransformedProperty("write_behind", DEFAULT_WRITE_BEHIND, Boolean::parseBoolean);
+    }
+
+    public static int getWriteBehindBatchSize() {
+        return getPositiveIntProperty("write_behind_batch_size", DEFAULT_WRITE_BEHIND_BATCH_SIZE);
+    }
+
+    /**
+     * @return Наибольшее время ожидания пакета отложенной записи в миллисекундах
+     */
+    public static int getWriteBehindFlushInterval() {
+        return getPositiveIntProperty("write_behind_flush_interval", DEFAULT_WRITE_BEHIND_FLUSH_INTERVAL);
+    }
+
+    /**
+     * @return true, если клиенту достаточно подтверждения применения изменения (write_ack=apply),
+     * false, если он ждет записи изменения в базу данных (write_ack=durable)
+     */
+    public static boolean isEarlyWriteAck() {
+        return getTransformedProperty("write_ack", DEFAULT_EARLY_WRITE_ACK, s -> {
+            if (s.equalsIgnoreCase("apply")) return true;
+            if (s.equalsIgnoreCase("durable")) return false;
+            logger.info("write_ack должен быть apply или durable, используем значение по умолчанию durable");
+            return DEFAULT_EARLY_WRITE_ACK;
+        });
+    }
+
+    public static String getSnapshotFile() {
+        return getTransformedProperty("snapshot_file", DEFAULT_SNAPSHOT_FILE);
+    }
+
+    /**
+     * @return Период записи снимка коллекции в секундах
+     */
+    public static int getSnapshotInterval() {
+        return getPositiveIntProperty("snapshot_interval", DEFAULT_SNAPSHOT_INTERVAL);
+    }
+
+    /**
+     * @return Каталог на сервере, из которого команда import читает файлы
+     */
+    public static String getImportDir() {
+        return getTransformedProperty("import_dir", DEFAULT_IMPORT_DIR);
+    }
+
+    /**
+     * @return Каталог на сервере, в который команда export записывает файлы
+     */
+    public static String getExportDir() {
+        return getTransformedProperty("export_dir", DEFAULT_EXPORT_DIR);
+    }
+
+    /**
+     * @return Количество записей, вставляемых одной транзакцией при импорте
+     */
+    public static int getImportChunkSize() {
+        return getPositiveIntProperty("import_chunk_size", DEFAULT_IMPORT_CHUNK_SIZE);
+    }
+
+    /**
+     * @return true, если люди хранятся в журнале на диске сервера (store=log),
+     * false, если в базе данных PostgreSQL (store=jdbc)
+     */
+    public static boolean isLogStore() {
+        return getTransformedProperty("store", DEFAULT_LOG_STORE, s -> {
+            if (s.equalsIgnoreCase("log")) return true;
+            if (s.equalsIgnoreCase("jdbc")) return false;
+            logger.info("store должен быть jdbc или log, используем значение по умолчанию jdbc");
+            return DEFAULT_LOG_STORE;
+        });
+    }
+
+    /**
+     * @return Каталог сегментов журнала хранилища
+     */
+    public static String getStoreDir() {
+        return getTransformedProperty("store_dir", DEFAULT_STORE_DIR);
+    }
+
+    /**
+     * @return Размер сегмента журнала в байтах, после которого записи продолжаются в новом сегменте
+     */
+    public static int getStoreSegmentSize() {
+        return getPositiveIntProperty("store_segment_size", DEFAULT_STORE_SEGMENT_SIZE);
+    }
+
+    /**
+     * @return Период сжатия журнала хранилища в секундах
+     */
+    public static int getStoreCompactionInterval() {
+        return getPositiveIntProperty("store_compaction_interval", DEFAULT_STORE_COMPACTION_INTERVAL);
+    }
+
+    public static String getDbPoolValidationQuery() {
+        return getTransformedProperty("db_pool_validation_query", DEFAULT_DB_POOL_VALIDATION_QUERY);
+    }
+
+    private static int getPositiveIntProperty(String key, int def) {
+        return getTransformedProperty(key, def, s -> {
+            Integer result = UtilFunctions.intOrNull(s);
+            if (result == null || result <= 0) {
+                logger.info(String.format("%s должен быть целым положительным числом, используем значение по умолчанию %s", key, def));
+                return def;
+            }
+            return result;
+        });
+    }
+
     private static String getTransformedProperty(String key, String def) {
         return getTransformedProperty(key, def, s -> s);
     }
@@ -0,0 +1,93 @@
+package common.net.protocol;
+
+import common.commandline.Command;
+import common.commandline.response.*;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+
+/**
+ * Кодек компактного бинарного представления сообщений. Команда передается числовым кодом из {@link CommandOpcodes},
+ * аргументы - тегированными значениями {@link DataCodec}, результат - кодом класса ответа,
+ * его порядковым номером и строкой значения
+ *
+ * @see Envelope
+ */
+public class BinaryCodec implements MessageCodec {
+
+    /**
+     * Перечисления ответов передаются индексом в этом массиве и порядковым номером константы
+     */
+    private static final Response[][] RESPONSES = {
+            DefaultResponse.values(), SqlResponse.values(), PeopleDatabaseResponse.values()
+    };
+
+    @Override
+    public void encodeRequest(Command command, Object[] args, BinaryWriter out) throws UnsupportedValueException {
+        Short opcode = CommandOpcodes.getOpcode(command);
+        if (opcode == null)
+            throw new UnsupportedValueException("Команда " + command.getAlias() + " не имеет числового кода");
+        out.writeShort(opcode).writeVarInt(args.length);
+        for (Object arg : args) DataCodec.writeValue(out, arg);
+    }
+
+    @Override
+    public RequestMessage decodeRequest(ByteBuffer in) throws ProtocolException {
+        BinaryReader reader = new BinaryReader(in);
+        short opcode = reader.readShort();
+        Command command = CommandOpcodes.getCommand(opcode);
+        if (command == null) throw new ProtocolException("Неизвестный код команды " + opcode);
+        int count = reader.readVarInt();
+        if (count < 0 || count > in.remaining()) throw new ProtocolException("Некорректное количество аргументов " + count);
+        Object[] args = new Object[count];
+        for (int i = 0; i < count; i++) args[i] = DataCodec.readValue(reader);
+        return new RequestMessage(command, args);
+    }
+
+    @Override
+    public void encodeResult(CommandResult result, BinaryWriter out) throws UnsupportedValueException {
+        if (result.getClass() != CommandResult.class)
+            throw new UnsupportedValueException("Нет бинарного представления для результата " + result.getClass().getName());
+        Response response = result.getResponse();
+        int kind = responseKind(response);
+        out.writeByte(kind).writeVarInt(((Enum<?>) response).ordinal()).writeString(result.getValue());
+    }
+
+    @Override
+    public CommandResult decodeResult(ByteBuffer in) throws ProtocolException {
+        BinaryReader reader = new BinaryReader(in);
+        Response response = readResponse(reader);
+        return new CommandResult(reader.readString(), response);
+    }
+
+    /**
+     * Читает начало результата до текста значения включительно с его длиной,
+     * используется для вывода текста по мере получения данных
+     *
+     * @param in Буфер с началом результата, позиция сдвигается на начало текста
+     * @return Ответ, содержащийся в результате
+     * @throws ProtocolException если данных недостаточно или они повреждены
+     */
+    public static Response readResultHeader(ByteBuffer in) throws ProtocolException {
+        BinaryReader reader = new BinaryReader(in);
+        Response response = readResponse(reader);
+        reader.readVarInt();
+        return response;
+    }
+
+    private static int responseKind(Response response) throws UnsupportedValueException {
+        for (int kind = 0; kind < RESPONSES.length; kind++) {
+            Response[] values = RESPONSES[kind];
+            if (values.length > 0 && values[0].getClass() == response.getClass()) return kind;
+        }
+        throw new UnsupportedValueException("Нет бинарного представления для ответа " + response.getClass().getName());
+    }
+
+    private static Response readResponse(BinaryReader reader) throws ProtocolException {
+        int kind = reader.readUnsignedByte();
+        int ordinal = reader.readVarInt();
+        if (kind >= RESPONSES.length || ordinal < 0 || ordinal >= RESPONSES[kind].length)
+            throw new ProtocolException("Неизвестный ответ " + kind + ":" + ordinal);
+        return RESPONSES[kind][ordinal];
+    }
+}
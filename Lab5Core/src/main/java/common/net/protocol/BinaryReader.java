@@ -0,0 +1,119 @@
+package common.net.protocol;
+
+import java.net.ProtocolException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Класс чтения примитивов и строк, записанных {@link BinaryWriter}, из {@link ByteBuffer}
+ * без копирования всего буфера. Обрыв или порча данных приводят к {@link ProtocolException}
+ */
+public class BinaryReader {
+
+    private final ByteBuffer buffer;
+
+    public BinaryReader(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    public boolean hasRemaining() {
+        return buffer.hasRemaining();
+    }
+
+    public int readByte() throws ProtocolException {
+        try {
+            return buffer.get();
+        } catch (BufferUnderflowException e) {
+            throw truncated();
+        }
+    }
+
+    public int readUnsignedByte() throws ProtocolException {
+        return readByte() & 0xFF;
+    }
+
+    public boolean readBoolean() throws ProtocolException {
+        return readByte() != 0;
+    }
+
+    public short readShort() throws ProtocolException {
+        try {
+            return buffer.getShort();
+        } catch (BufferUnderflowException e) {
+            throw truncated();
+        }
+    }
+
+    public int readInt() throws ProtocolException {
+        try {
+            return buffer.getInt();
+        } catch (BufferUnderflowException e) {
+            throw truncated();
+        }
+    }
+
+    public long readLong() throws ProtocolException {
+        try {
+            return buffer.getLong();
+        } catch (BufferUnderflowException e) {
+            throw truncated();
+        }
+    }
+
+    public float readFloat() throws ProtocolException {
+        try {
+            return buffer.getFloat();
+        } catch (BufferUnderflowException e) {
+            throw truncated();
+        }
+    }
+
+    public double readDouble() throws ProtocolException {
+        try {
+            return buffer.getDouble();
+        } catch (BufferUnderflowException e) {
+            throw truncated();
+        }
+    }
+
+    public int readVarInt() throws ProtocolException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new ProtocolException("Слишком длинное число переменной длины");
+    }
+
+    public byte[] readBytes(int length) throws ProtocolException {
+        if (length < 0 || length > buffer.remaining()) throw truncated();
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    public String readString() throws ProtocolException {
+        int length = readVarInt();
+        if (length == 0) return null;
+        length--;
+        if (length < 0 || length > buffer.remaining()) throw truncated();
+        String value;
+        if (buffer.hasArray()) {
+            value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+        } else {
+            value = new String(readBytes(length), StandardCharsets.UTF_8);
+        }
+        return value;
+    }
+
+    private static ProtocolException truncated() {
+        return new ProtocolException("Данные оборваны");
+    }
+}
@@ -0,0 +1,155 @@
+package common.net.protocol;
+
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Класс записи примитивов и строк в {@link ByteBuffer} в порядке байтов big-endian.
+ * Растущий writer при нехватке места заменяет буфер на больший, фиксированный
+ * бросает {@link BufferOverflowException}
+ */
+public class BinaryWriter {
+
+    private ByteBuffer buffer;
+    private final boolean growable;
+
+    public BinaryWriter(ByteBuffer buffer) {
+        this(buffer, false);
+    }
+
+    private BinaryWriter(ByteBuffer buffer, boolean growable) {
+        this.buffer = buffer;
+        this.growable = growable;
+    }
+
+    public static BinaryWriter growable(int initialCapacity) {
+        return new BinaryWriter(ByteBuffer.allocate(initialCapacity), true);
+    }
+
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    public int position() {
+        return buffer.position();
+    }
+
+    /**
+     * Возвращает позицию записи назад, отбрасывая записанные после нее данные
+     *
+     * @param position Позиция, ранее полученная из {@link #position()}
+     */
+    public void rewind(int position) {
+        buffer.position(position);
+    }
+
+    public BinaryWriter writeByte(int value) {
+        ensureRemaining(1);
+        buffer.put((byte) value);
+        return this;
+    }
+
+    public BinaryWriter writeBoolean(boolean value) {
+        return writeByte(value ? 1 : 0);
+    }
+
+    public BinaryWriter writeShort(int value) {
+        ensureRemaining(Short.BYTES);
+        buffer.putShort((short) value);
+        return this;
+    }
+
+    public BinaryWriter writeInt(int value) {
+        ensureRemaining(Integer.BYTES);
+        buffer.putInt(value);
+        return this;
+    }
+
+    public BinaryWriter writeLong(long value) {
+        ensureRemaining(Long.BYTES);
+        buffer.putLong(value);
+        return this;
+    }
+
+    public BinaryWriter writeFloat(float value) {
+        ensureRemaining(Float.BYTES);
+        buffer.putFloat(value);
+        return this;
+    }
+
+    public BinaryWriter writeDouble(double value) {
+        ensureRemaining(Double.BYTES);
+        buffer.putDouble(value);
+        return this;
+    }
+
+    /**
+     * Записывает неотрицательное целое число переменной длины, по 7 бит на байт
+     *
+     * @param value Неотрицательное число
+     * @return Этот же writer
+     */
+    public BinaryWriter writeVarInt(int value) {
+        while ((value & ~0x7F) != 0) {
+            writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        return writeByte(value);
+    }
+
+    public BinaryWriter writeBytes(byte[] bytes) {
+        return writeBytes(bytes, 0, bytes.length);
+    }
+
+    public BinaryWriter writeBytes(byte[] bytes, int off, int len) {
+        ensureRemaining(len);
+        buffer.put(bytes, off, len);
+        return this;
+    }
+
+    public BinaryWriter writeBytes(ByteBuffer bytes) {
+        ensureRemaining(bytes.remaining());
+        buffer.put(bytes);
+        return this;
+    }
+
+    /**
+     * Записывает строку в кодировке UTF-8 с длиной переменной длины,
+     * null кодируется нулевой длиной, остальные строки - длиной, увеличенной на единицу
+     *
+     * @param value Строка, может быть null
+     * @return Этот же writer
+     */
+    public BinaryWriter writeString(String value) {
+        if (value == null) return writeVarInt(0);
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(bytes.length + 1);
+        return writeBytes(bytes);
+    }
+
+    public OutputStream asOutputStream() {
+        return new OutputStream() {
+            @Override
+            public void write(int b) {
+                writeByte(b);
+            }
+
+            @Override
+            public void write(byte[] bytes, int off, int len) {
+                writeBytes(bytes, off, len);
+            }
+        };
+    }
+
+    private void ensureRemaining(int count) {
+        if (buffer.remaining() >= count) return;
+        if (!growable) throw new BufferOverflowException();
+        int capacity = Math.max(buffer.capacity() * 2, buffer.position() + count);
+        ByteBuffer grown = ByteBuffer.allocate(capacity);
+        buffer.flip();
+        grown.put(buffer);
+        buffer = grown;
+    }
+}
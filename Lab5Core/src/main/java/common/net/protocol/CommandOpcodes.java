@@ -0,0 +1,67 @@
+package common.net.protocol;
+
+import common.commandline.Command;
+import common.commandline.commands.LogInCommand;
+import common.commandline.commands.SignUpCommand;
+import common.commandline.pdcommands.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Таблица числовых кодов сетевых команд, используемых бинарным протоколом вместо сериализации объекта команды.
+ * Коды фиксированы и должны совпадать у клиента и сервера, новые команды получают новые коды,
+ * коды удаленных команд повторно не используются
+ */
+public final class CommandOpcodes {
+
+    private static final Map<String, Short> OPCODES = new HashMap<>();
+    private static final Map<Short, Command> COMMANDS = new HashMap<>();
+
+    static {
+        register(1, new LogInCommand());
+        register(2, new SignUpCommand());
+        register(10, new InfoCommand());
+        register(11, new ShowCommand());
+        register(12, new AddCommand());
+        register(13, new AddIfMaxCommand());
+        register(14, new AddIfMinCommand());
+        register(15, new ClearCommand());
+        register(16, new FilterContainsNameCommand());
+        register(17, new PrintFieldDescendingLocationCommand());
+        register(18, new RemoveByIdCommand());
+        register(19, new SumOfHeightCommand());
+        register(20, new UpdateCommand());
+        register(21, new StatsCommand());
+        register(22, new ShowMineCommand());
+        register(23, new CountMineCommand());
+        register(24, new ShowNextCommand());
+        register(25, new ImportCommand());
+        register(26, new ExportCommand());
+    }
+
+    private CommandOpcodes() {}
+
+    private static void register(int opcode, Command command) {
+        OPCODES.put(command.getAlias(), (short) opcode);
+        COMMANDS.put((short) opcode, command);
+    }
+
+    /**
+     * @param command Команда
+     * @return Код команды или null, если команда не имеет кода
+     */
+    public static Short getOpcode(Command command) {
+        Short opcode = OPCODES.get(command.getAlias());
+        if (opcode == null || COMMANDS.get(opcode).getClass() != command.getClass()) return null;
+        return opcode;
+    }
+
+    /**
+     * @param opcode Код команды
+     * @return Экземпляр команды или null, если команды с таким кодом не существует
+     */
+    public static Command getCommand(short opcode) {
+        return COMMANDS.get(opcode);
+    }
+}
@@ -0,0 +1,178 @@
+package common.net.protocol;
+
+import common.collection.PeopleCollection;
+import common.commandline.PlaceHolder;
+import common.data.*;
+import common.session.Session;
+import common.session.SessionTable;
+import common.store.PeopleStore;
+import common.store.WriteBehind;
+
+import java.net.ProtocolException;
+import java.time.LocalDate;
+
+/**
+ * Класс бинарных кодировщиков классов данных и аргументов команд.
+ * Каждый аргумент предваряется байтом тега, определяющим его тип
+ */
+public final class DataCodec {
+
+    private static final int TAG_NULL = 0,
+                             TAG_STRING = 1,
+                             TAG_LONG = 2,
+                             TAG_INT = 3,
+                             TAG_FLOAT = 4,
+                             TAG_DOUBLE = 5,
+                             TAG_BOOLEAN = 6,
+                             TAG_PERSON = 7,
+                             TAG_COORDINATES = 8,
+                             TAG_LOCATION = 9,
+                             TAG_COLOR = 10,
+                             TAG_COUNTRY = 11,
+                             TAG_PLACEHOLDER = 12;
+
+    /**
+     * Классы, ожидаемые заполнителями, передаются индексом в этом массиве,
+     * остальные - полным именем класса
+     */
+    private static final Class<?>[] PLACEHOLDER_CLASSES = {PeopleCollection.class, PeopleStore.class, Session.class,
+            SessionTable.class, WriteBehind.class};
+
+    private static final Color[] COLORS = Color.values();
+    private static final Country[] COUNTRIES = Country.values();
+
+    private DataCodec() {}
+
+    public static void writeValue(BinaryWriter out, Object value) throws UnsupportedValueException {
+        if (value == null) {
+            out.writeByte(TAG_NULL);
+        } else if (value instanceof String) {
+            out.writeByte(TAG_STRING).writeString((String) value);
+        } else if (value instanceof Long) {
+            out.writeByte(TAG_LONG).writeLong((Long) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(TAG_INT).writeInt((Integer) value);
+        } else if (value instanceof Float) {
+            out.writeByte(TAG_FLOAT).writeFloat((Float) value);
+        } else if (value instanceof Double) {
+            out.writeByte(TAG_DOUBLE).writeDouble((Double) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte(TAG_BOOLEAN).writeBoolean((Boolean) value);
+        } else if (value instanceof Person) {
+            writePerson(out.writeByte(TAG_PERSON), (Person) value);
+        } else if (value instanceof Coordinates) {
+            writeCoordinates(out.writeByte(TAG_COORDINATES), (Coordinates) value);
+        } else if (value instanceof Location) {
+            writeLocation(out.writeByte(TAG_LOCATION), (Location) value);
+        } else if (value instanceof Color) {
+            out.writeByte(TAG_COLOR).writeByte(((Color) value).ordinal());
+        } else if (value instanceof Country) {
+            out.writeByte(TAG_COUNTRY).writeByte(((Country) value).ordinal());
+        } else if (value instanceof PlaceHolder) {
+            writePlaceHolder(out.writeByte(TAG_PLACEHOLDER), (PlaceHolder<?>) value);
+        } else {
+            throw new UnsupportedValueException("Нет бинарного представления для класса " + value.getClass().getName());
+        }
+    }
+
+    public static Object readValue(BinaryReader in) throws ProtocolException {
+        int tag = in.readUnsignedByte();
+        switch (tag) {
+            case TAG_NULL: return null;
+            case TAG_STRING: return in.readString();
+            case TAG_LONG: return in.readLong();
+            case TAG_INT: return in.readInt();
+            case TAG_FLOAT: return in.readFloat();
+            case TAG_DOUBLE: return in.readDouble();
+            case TAG_BOOLEAN: return in.readBoolean();
+            case TAG_PERSON: return readPerson(in);
+            case TAG_COORDINATES: return readCoordinates(in);
+            case TAG_LOCATION: return readLocation(in);
+            case TAG_COLOR: return readEnum(in, COLORS);
+            case TAG_COUNTRY: return readEnum(in, COUNTRIES);
+            case TAG_PLACEHOLDER: return readPlaceHolder(in);
+            default: throw new ProtocolException("Неизвестный тег значения " + tag);
+        }
+    }
+
+    public static void writePerson(BinaryWriter out, Person person) {
+        out.writeLong(person.getId() == null ? 0 : person.getId())
+                .writeString(person.getName());
+        writeCoordinates(out, person.getCoordinates());
+        out.writeLong(person.getCreationDate().toEpochDay())
+                .writeBoolean(person.getHeight() != null);
+        if (person.getHeight() != null) out.writeInt(person.getHeight());
+        out.writeString(person.getPassportID())
+                .writeByte(person.getEyeColor().ordinal())
+                .writeByte(person.getNationality().ordinal())
+                .writeBoolean(person.getLocation() != null);
+        if (person.getLocation() != null) writeLocation(out, person.getLocation());
+        out.writeString(person.getOwner());
+    }
+
+    public static Person readPerson(BinaryReader in) throws ProtocolException {
+        long id = in.readLong();
+        String name = in.readString();
+        Coordinates coordinates = readCoordinates(in);
+        LocalDate creationDate = LocalDate.ofEpochDay(in.readLong());
+        Integer height = in.readBoolean() ? in.readInt() : null;
+        String passportID = in.readString();
+        Color eyeColor = readEnum(in, COLORS);
+        Country nationality = readEnum(in, COUNTRIES);
+        Location location = in.readBoolean() ? readLocation(in) : null;
+        String owner = in.readString();
+        if (name == null) throw new ProtocolException("Имя человека не может быть null");
+        Person person = new Person(id, name, coordinates, height, passportID, eyeColor, nationality, location, owner);
+        person.setCreationDate(creationDate);
+        return person;
+    }
+
+    public static void writeCoordinates(BinaryWriter out, Coordinates coordinates) {
+        out.writeFloat(coordinates.getX()).writeFloat(coordinates.getY());
+    }
+
+    public static Coordinates readCoordinates(BinaryReader in) throws ProtocolException {
+        return new Coordinates(in.readFloat(), in.readFloat());
+    }
+
+    public static void writeLocation(BinaryWriter out, Location location) {
+        out.writeDouble(location.getX())
+                .writeFloat(location.getY())
+                .writeLong(location.getZ())
+                .writeString(location.getName());
+    }
+
+    public static Location readLocation(BinaryReader in) throws ProtocolException {
+        return new Location(in.readDouble(), in.readFloat(), in.readLong(), in.readString());
+    }
+
+    private static <T extends Enum<T>> T readEnum(BinaryReader in, T[] values) throws ProtocolException {
+        int ordinal = in.readUnsignedByte();
+        if (ordinal >= values.length) throw new ProtocolException("Неизвестное значение перечисления " + ordinal);
+        return values[ordinal];
+    }
+
+    private static void writePlaceHolder(BinaryWriter out, PlaceHolder<?> placeHolder) {
+        Class<?> clazz = placeHolder.getExpectedClass();
+        for (int i = 0; i < PLACEHOLDER_CLASSES.length; i++) {
+            if (PLACEHOLDER_CLASSES[i] == clazz) {
+                out.writeVarInt(i + 1);
+                return;
+            }
+        }
+        out.writeVarInt(0).writeString(clazz.getName());
+    }
+
+    private static PlaceHolder<?> readPlaceHolder(BinaryReader in) throws ProtocolException {
+        int index = in.readVarInt();
+        if (index > 0 && index <= PLACEHOLDER_CLASSES.length)
+            return PlaceHolder.of(PLACEHOLDER_CLASSES[index - 1]);
+        if (index != 0) throw new ProtocolException("Неизвестный класс заполнителя " + index);
+        String className = in.readString();
+        try {
+            return PlaceHolder.of(Class.forName(className));
+        } catch (ClassNotFoundException | NullPointerException e) {
+            throw new ProtocolException("Неизвестный класс заполнителя " + className);
+        }
+    }
+}
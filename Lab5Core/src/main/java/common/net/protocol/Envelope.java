@@ -0,0 +1,181 @@
+package common.net.protocol;
+
+import common.commandline.Command;
+import common.commandline.response.CommandResult;
+
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Класс конверта кадров запроса и результата. После заголовка {@link Protocol} кадр содержит
+ * идентификатор запроса, по которому клиент сопоставляет ответы с запросами, и байт формата
+ * полезных данных. Если значение не имеет бинарного представления, полезные данные
+ * кадра кодируются Java-сериализацией. Кадр запроса также содержит токен сессии, выданный
+ * при входе. Старший бит байта формата в запросе означает, что клиент
+ * принимает сжатые результаты, в результате — что полезные данные сжаты алгоритмом Deflate.
+ * Следующий бит в запросе означает, что при отложенной записи клиенту достаточно подтверждения
+ * применения изменения к коллекции, без ожидания записи в базу данных
+ */
+public final class Envelope {
+
+    public static final int HEADER_SIZE = Protocol.HEADER_SIZE + Integer.BYTES + 1;
+
+    public static final int FLAG_DEFLATE = 0x80,
+                            FLAG_EARLY_ACK = 0x40,
+                            FORMAT_MASK = 0x3F;
+
+    private static final int INFLATE_CHUNK_SIZE = 8192;
+
+    private Envelope() {}
+
+    /**
+     * @param sessionToken Токен сессии или {@link common.session.SessionTable#NO_SESSION} до входа
+     * @param acceptsDeflate true, если сжатие согласовано кадром {@link Hello} и клиент принимает сжатые результаты
+     * @param earlyAck true, если изменение можно подтвердить до записи в базу данных
+     */
+    public static void writeRequest(BinaryWriter out, int requestId, long sessionToken, Command command, Object[] args,
+                                    WireFormat format, boolean acceptsDeflate, boolean earlyAck) throws IOException {
+        int start = out.position();
+        try {
+            writeEnvelope(out, Protocol.TYPE_REQUEST, requestId,
+                    format.ordinal() | (acceptsDeflate ? FLAG_DEFLATE : 0) | (earlyAck ? FLAG_EARLY_ACK : 0));
+            out.writeLong(sessionToken);
+            format.getCodec().encodeRequest(command, args, out);
+        } catch (UnsupportedValueException e) {
+            if (format == WireFormat.SERIALIZATION) throw e;
+            out.rewind(start);
+            writeRequest(out, requestId, sessionToken, command, args, WireFormat.SERIALIZATION, acceptsDeflate, earlyAck);
+        }
+    }
+
+    public static RequestMessage readRequest(ByteBuffer in) throws IOException, ClassNotFoundException {
+        BinaryReader reader = new BinaryReader(in);
+        Protocol.readHeader(reader, Protocol.TYPE_REQUEST);
+        int requestId = reader.readInt();
+        int flags = reader.readUnsignedByte();
+        long sessionToken = reader.readLong();
+        WireFormat format = WireFormat.of(flags & FORMAT_MASK);
+        RequestMessage message = format.getCodec().decodeRequest(in);
+        message.setEnvelope(requestId, format, (flags & FLAG_DEFLATE) != 0, (flags & FLAG_EARLY_ACK) != 0, sessionToken);
+        return message;
+    }
+
+    /**
+     * Возвращает идентификатор запроса, не сдвигая позицию буфера, используется
+     * для ответа на запросы, которые не удалось декодировать
+     *
+     * @param in Буфер с кадром запроса
+     * @return Идентификатор запроса или 0, если данные не являются кадром запроса
+     */
+    public static int peekRequestId(ByteBuffer in) {
+        if (Protocol.frameType(in) != Protocol.TYPE_REQUEST || in.remaining() < HEADER_SIZE) return 0;
+        return in.getInt(in.position() + Protocol.HEADER_SIZE);
+    }
+
+    public static void writeResult(BinaryWriter out, int requestId, CommandResult result, WireFormat format) throws IOException {
+        int start = out.position();
+        try {
+            writeEnvelope(out, Protocol.TYPE_RESULT, requestId, format.ordinal());
+            format.getCodec().encodeResult(result, out);
+        } catch (UnsupportedValueException e) {
+            if (format == WireFormat.SERIALIZATION) throw e;
+            out.rewind(start);
+            writeResult(out, requestId, result, WireFormat.SERIALIZATION);
+        }
+    }
+
+    public static ResultMessage readResult(ByteBuffer in) throws IOException, ClassNotFoundException {
+        BinaryReader reader = new BinaryReader(in);
+        Protocol.readHeader(reader, Protocol.TYPE_RESULT);
+        int requestId = reader.readInt();
+        int flags = reader.readUnsignedByte();
+        ByteBuffer payload = isDeflated(flags) ? inflate(in) : in;
+        return new ResultMessage(requestId, formatOf(flags).getCodec().decodeResult(payload));
+    }
+
+    /**
+     * Читает конверт кадра результата, используется для вывода текста по мере получения фрагментов
+     *
+     * @param in Буфер с началом кадра, позиция сдвигается на начало полезных данных
+     * @return Байт формата с флагами
+     * @throws ProtocolException если данных недостаточно или они не являются кадром результата
+     */
+    public static int readResultEnvelope(ByteBuffer in) throws ProtocolException {
+        BinaryReader reader = new BinaryReader(in);
+        Protocol.readHeader(reader, Protocol.TYPE_RESULT);
+        reader.readInt();
+        int flags = reader.readUnsignedByte();
+        formatOf(flags);
+        return flags;
+    }
+
+    public static WireFormat formatOf(int flags) throws ProtocolException {
+        return WireFormat.of(flags & FORMAT_MASK);
+    }
+
+    public static boolean isDeflated(int flags) {
+        return (flags & FLAG_DEFLATE) != 0;
+    }
+
+    /**
+     * Сжимает полезные данные закодированного кадра результата
+     *
+     * @param frame Буфер, готовый к чтению кадра, позиция буфера не сдвигается
+     * @param deflater Сжиматель, сбрасывается перед использованием
+     * @return Новый буфер со сжатым кадром или null, если сжатие не уменьшило размер кадра
+     */
+    public static ByteBuffer deflateResult(ByteBuffer frame, Deflater deflater) {
+        ByteBuffer payload = frame.duplicate();
+        payload.position(payload.position() + HEADER_SIZE);
+        byte[] input = new byte[payload.remaining()];
+        payload.get(input);
+        deflater.reset();
+        deflater.setInput(input);
+        deflater.finish();
+        byte[] output = new byte[frame.remaining()];
+        ByteBuffer result = ByteBuffer.wrap(output);
+        for (int i = 0; i < HEADER_SIZE; i++) result.put(frame.get(frame.position() + i));
+        int index = frame.position() + HEADER_SIZE - 1;
+        result.put(HEADER_SIZE - 1, (byte) (frame.get(index) | FLAG_DEFLATE));
+        while (!deflater.finished() && result.hasRemaining()) {
+            int written = deflater.deflate(output, result.position(), result.remaining());
+            result.position(result.position() + written);
+        }
+        if (!deflater.finished()) return null;
+        result.flip();
+        return result;
+    }
+
+    private static ByteBuffer inflate(ByteBuffer in) throws ProtocolException {
+        byte[] input = new byte[in.remaining()];
+        in.get(input);
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(input);
+            BinaryWriter out = BinaryWriter.growable(input.length * 4);
+            byte[] chunk = new byte[INFLATE_CHUNK_SIZE];
+            while (!inflater.finished()) {
+                int count = inflater.inflate(chunk);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                    throw new ProtocolException("Сжатые данные результата оборваны");
+                out.writeBytes(chunk, 0, count);
+            }
+            ByteBuffer result = out.getBuffer();
+            result.flip();
+            return result;
+        } catch (DataFormatException e) {
+            throw new ProtocolException("Сжатые данные результата повреждены: " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static void writeEnvelope(BinaryWriter out, byte type, int requestId, int flags) {
+        Protocol.writeHeader(out, type);
+        out.writeInt(requestId).writeByte(flags);
+    }
+}
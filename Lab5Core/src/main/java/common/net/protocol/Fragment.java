@@ -0,0 +1,90 @@
+package common.net.protocol;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+
+/**
+ * Класс фрагмента большого сообщения. Сообщение, не помещающееся в одну датаграмму,
+ * делится на части одинакового размера, каждая из которых передается кадром
+ * {@link Protocol#TYPE_FRAGMENT} с идентификаторами запроса и сообщения, порядковым номером и общим числом частей
+ *
+ * @see Nack
+ */
+public class Fragment {
+
+    public static final int HEADER_SIZE = Protocol.HEADER_SIZE + 4 * Integer.BYTES;
+
+    private final int requestId;
+    private final int messageId;
+    private final int seq;
+    private final int total;
+    private final ByteBuffer payload;
+
+    public Fragment(int requestId, int messageId, int seq, int total, ByteBuffer payload) {
+        this.requestId = requestId;
+        this.messageId = messageId;
+        this.seq = seq;
+        this.total = total;
+        this.payload = payload;
+    }
+
+    public static int count(int length, int fragmentSize) {
+        return (length + fragmentSize - 1) / fragmentSize;
+    }
+
+    /**
+     * Записывает фрагмент номер seq сообщения message в writer
+     *
+     * @param out Writer, в который записывается кадр
+     * @param requestId Идентификатор запроса, на который отвечает сообщение
+     * @param messageId Идентификатор сообщения
+     * @param message Сообщение целиком, позиция буфера не меняется
+     * @param seq Номер фрагмента
+     * @param fragmentSize Размер полезных данных одного фрагмента
+     */
+    public static void write(BinaryWriter out, int requestId, int messageId, ByteBuffer message, int seq, int fragmentSize) {
+        int total = count(message.remaining(), fragmentSize);
+        int from = message.position() + seq * fragmentSize;
+        int to = Math.min(message.limit(), from + fragmentSize);
+        ByteBuffer payload = message.duplicate();
+        payload.limit(to).position(from);
+        Protocol.writeHeader(out, Protocol.TYPE_FRAGMENT);
+        out.writeInt(requestId).writeInt(messageId).writeInt(seq).writeInt(total).writeBytes(payload);
+    }
+
+    /**
+     * Читает фрагмент из буфера, полезные данные фрагмента не копируются
+     *
+     * @param in Буфер с кадром фрагмента
+     * @return Фрагмент, ссылающийся на данные буфера
+     * @throws ProtocolException если кадр поврежден
+     */
+    public static Fragment read(ByteBuffer in) throws ProtocolException {
+        BinaryReader reader = new BinaryReader(in);
+        Protocol.readHeader(reader, Protocol.TYPE_FRAGMENT);
+        int requestId = reader.readInt(), messageId = reader.readInt(), seq = reader.readInt(), total = reader.readInt();
+        if (total <= 0 || seq < 0 || seq >= total)
+            throw new ProtocolException(String.format("Некорректный номер фрагмента %d из %d", seq, total));
+        return new Fragment(requestId, messageId, seq, total, in.slice());
+    }
+
+    public int getRequestId() {
+        return requestId;
+    }
+
+    public int getMessageId() {
+        return messageId;
+    }
+
+    public int getSeq() {
+        return seq;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public ByteBuffer getPayload() {
+        return payload;
+    }
+}
@@ -0,0 +1,52 @@
+package common.net.protocol;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+
+/**
+ * Класс кадра согласования возможностей. Клиент после подключения сообщает поддерживаемые
+ * им возможности, сервер отвечает кадром с возможностями, которые поддерживают обе стороны
+ */
+public class Hello {
+
+    /**
+     * Сжатие полезных данных результата алгоритмом Deflate
+     *
+     * @see Envelope#FLAG_DEFLATE
+     */
+    public static final int DEFLATE = 1;
+
+    public static final int SUPPORTED = DEFLATE;
+
+    private final int requestId;
+    private final int capabilities;
+
+    public Hello(int requestId, int capabilities) {
+        this.requestId = requestId;
+        this.capabilities = capabilities;
+    }
+
+    public void write(BinaryWriter out) {
+        Protocol.writeHeader(out, Protocol.TYPE_HELLO);
+        out.writeInt(requestId).writeVarInt(capabilities);
+    }
+
+    public static Hello read(ByteBuffer in) throws ProtocolException {
+        BinaryReader reader = new BinaryReader(in);
+        Protocol.readHeader(reader, Protocol.TYPE_HELLO);
+        int requestId = reader.readInt();
+        return new Hello(requestId, reader.readVarInt());
+    }
+
+    public int getRequestId() {
+        return requestId;
+    }
+
+    public int getCapabilities() {
+        return capabilities;
+    }
+
+    public boolean supports(int capability) {
+        return (capabilities & capability) != 0;
+    }
+}
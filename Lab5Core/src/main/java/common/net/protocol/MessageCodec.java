@@ -0,0 +1,23 @@
+package common.net.protocol;
+
+import common.commandline.Command;
+import common.commandline.response.CommandResult;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Интерфейс кодека сообщений между клиентом и сервером
+ *
+ * @see WireFormat
+ */
+public interface MessageCodec {
+
+    void encodeRequest(Command command, Object[] args, BinaryWriter out) throws IOException;
+
+    RequestMessage decodeRequest(ByteBuffer in) throws IOException, ClassNotFoundException;
+
+    void encodeResult(CommandResult result, BinaryWriter out) throws IOException;
+
+    CommandResult decodeResult(ByteBuffer in) throws IOException, ClassNotFoundException;
+}
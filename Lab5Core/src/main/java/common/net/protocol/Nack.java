@@ -0,0 +1,50 @@
+package common.net.protocol;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+
+/**
+ * Класс запроса повторной передачи потерянных фрагментов сообщения
+ *
+ * @see Fragment
+ */
+public class Nack {
+
+    /**
+     * Наибольшее количество номеров фрагментов в одном запросе
+     */
+    public static final int MAX_SEQS = 4096;
+
+    private final int messageId;
+    private final int[] seqs;
+
+    public Nack(int messageId, int[] seqs) {
+        this.messageId = messageId;
+        this.seqs = seqs;
+    }
+
+    public void write(BinaryWriter out) {
+        Protocol.writeHeader(out, Protocol.TYPE_NACK);
+        out.writeInt(messageId).writeVarInt(seqs.length);
+        for (int seq : seqs) out.writeVarInt(seq);
+    }
+
+    public static Nack read(ByteBuffer in) throws ProtocolException {
+        BinaryReader reader = new BinaryReader(in);
+        Protocol.readHeader(reader, Protocol.TYPE_NACK);
+        int messageId = reader.readInt();
+        int count = reader.readVarInt();
+        if (count < 0 || count > MAX_SEQS) throw new ProtocolException("Слишком много номеров фрагментов: " + count);
+        int[] seqs = new int[count];
+        for (int i = 0; i < count; i++) seqs[i] = reader.readVarInt();
+        return new Nack(messageId, seqs);
+    }
+
+    public int getMessageId() {
+        return messageId;
+    }
+
+    public int[] getSeqs() {
+        return seqs;
+    }
+}
@@ -0,0 +1,53 @@
+package common.net.protocol;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+
+/**
+ * Константы бинарного протокола обмена между клиентом и сервером.
+ * Каждый кадр начинается с заголовка из байта {@link #MAGIC}, версии протокола и типа кадра
+ *
+ * @see Envelope
+ */
+public final class Protocol {
+
+    public static final byte MAGIC = 0x4C,
+                             VERSION = 4;
+
+    public static final byte TYPE_REQUEST = 1,
+                             TYPE_RESULT = 2,
+                             TYPE_FRAGMENT = 3,
+                             TYPE_NACK = 4,
+                             TYPE_HELLO = 5;
+
+    public static final int HEADER_SIZE = 3,
+                            MAX_DATAGRAM_SIZE = 65_507;
+
+    private Protocol() {}
+
+    /**
+     * Возвращает тип кадра, не сдвигая позицию буфера
+     *
+     * @param buffer Буфер с полученными данными
+     * @return Тип кадра или -1, если данные не являются кадром бинарного протокола
+     */
+    public static int frameType(ByteBuffer buffer) {
+        int position = buffer.position();
+        if (buffer.remaining() < HEADER_SIZE || buffer.get(position) != MAGIC) return -1;
+        return buffer.get(position + 2);
+    }
+
+    public static void writeHeader(BinaryWriter out, byte type) {
+        out.writeByte(MAGIC).writeByte(VERSION).writeByte(type);
+    }
+
+    public static void readHeader(BinaryReader reader, byte expectedType) throws ProtocolException {
+        if (reader.readByte() != MAGIC) throw new ProtocolException("Данные не являются кадром протокола");
+        int version = reader.readUnsignedByte();
+        if (version != VERSION)
+            throw new ProtocolException(String.format("Неподдерживаемая версия протокола %d, ожидалась %d", version, VERSION));
+        int type = reader.readUnsignedByte();
+        if (type != expectedType)
+            throw new ProtocolException(String.format("Получен кадр типа %d, ожидался %d", type, expectedType));
+    }
+}
@@ -0,0 +1,66 @@
+package common.net.protocol;
+
+import common.commandline.Command;
+
+/**
+ * Класс декодированного запроса клиента: идентификатор запроса, формат данных, токен сессии, команда и ее аргументы
+ */
+public class RequestMessage {
+
+    private int requestId;
+    private WireFormat format;
+    private boolean acceptsDeflate, earlyAck;
+    private long sessionToken;
+    private final Command command;
+    private final Object[] args;
+
+    public RequestMessage(Command command, Object[] args) {
+        this.command = command;
+        this.args = args;
+    }
+
+    void setEnvelope(int requestId, WireFormat format, boolean acceptsDeflate, boolean earlyAck, long sessionToken) {
+        this.requestId = requestId;
+        this.format = format;
+        this.acceptsDeflate = acceptsDeflate;
+        this.earlyAck = earlyAck;
+        this.sessionToken = sessionToken;
+    }
+
+    public int getRequestId() {
+        return requestId;
+    }
+
+    public WireFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * @return true, если клиент согласовал сжатие и принимает сжатые результаты
+     */
+    public boolean acceptsDeflate() {
+        return acceptsDeflate;
+    }
+
+    /**
+     * @return true, если при отложенной записи клиент согласен на подтверждение изменения до записи в базу данных
+     */
+    public boolean isEarlyAck() {
+        return earlyAck;
+    }
+
+    /**
+     * @return Токен сессии, выданный клиенту при входе, или {@link common.session.SessionTable#NO_SESSION}
+     */
+    public long getSessionToken() {
+        return sessionToken;
+    }
+
+    public Command getCommand() {
+        return command;
+    }
+
+    public Object[] getArgs() {
+        return args;
+    }
+}
@@ -0,0 +1,25 @@
+package common.net.protocol;
+
+import common.commandline.response.CommandResult;
+
+/**
+ * Класс декодированного результата: идентификатор запроса, на который он отвечает, и сам результат
+ */
+public class ResultMessage {
+
+    private final int requestId;
+    private final CommandResult result;
+
+    public ResultMessage(int requestId, CommandResult result) {
+        this.requestId = requestId;
+        this.result = result;
+    }
+
+    public int getRequestId() {
+        return requestId;
+    }
+
+    public CommandResult getResult() {
+        return result;
+    }
+}
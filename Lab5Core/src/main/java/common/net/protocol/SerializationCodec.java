@@ -0,0 +1,46 @@
+package common.net.protocol;
+
+import common.commandline.Command;
+import common.commandline.response.CommandResult;
+import common.net.ByteBufferInputStream;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Кодек, передающий команды, аргументы и результаты стандартной Java-сериализацией,
+ * используется как запасной вариант для значений без бинарного представления
+ */
+public class SerializationCodec implements MessageCodec {
+
+    @Override
+    public void encodeRequest(Command command, Object[] args, BinaryWriter out) throws IOException {
+        ObjectOutputStream objectOutputStream = new ObjectOutputStream(out.asOutputStream());
+        objectOutputStream.writeObject(command);
+        objectOutputStream.writeObject(args);
+        objectOutputStream.flush();
+    }
+
+    @Override
+    public RequestMessage decodeRequest(ByteBuffer in) throws IOException, ClassNotFoundException {
+        ObjectInputStream objectInputStream = new ObjectInputStream(new ByteBufferInputStream(in));
+        Command command = (Command) objectInputStream.readObject();
+        Object[] args = (Object[]) objectInputStream.readObject();
+        return new RequestMessage(command, args);
+    }
+
+    @Override
+    public void encodeResult(CommandResult result, BinaryWriter out) throws IOException {
+        ObjectOutputStream objectOutputStream = new ObjectOutputStream(out.asOutputStream());
+        objectOutputStream.writeObject(result);
+        objectOutputStream.flush();
+    }
+
+    @Override
+    public CommandResult decodeResult(ByteBuffer in) throws IOException, ClassNotFoundException {
+        ObjectInputStream objectInputStream = new ObjectInputStream(new ByteBufferInputStream(in));
+        return (CommandResult) objectInputStream.readObject();
+    }
+}
@@ -0,0 +1,14 @@
+package common.net.protocol;
+
+import java.io.IOException;
+
+/**
+ * Исключение, бросаемое бинарным кодеком при попытке закодировать значение,
+ * для которого нет бинарного представления, в этом случае следует использовать Java-сериализацию
+ */
+public class UnsupportedValueException extends IOException {
+
+    public UnsupportedValueException(String message) {
+        super(message);
+    }
+}
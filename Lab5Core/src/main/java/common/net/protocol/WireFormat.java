@@ -0,0 +1,28 @@
+package common.net.protocol;
+
+import java.net.ProtocolException;
+
+/**
+ * Перечисление форматов полезных данных кадров запроса и результата
+ */
+public enum WireFormat {
+    BINARY(new BinaryCodec()),
+    SERIALIZATION(new SerializationCodec());
+
+    private static final WireFormat[] VALUES = values();
+
+    private final MessageCodec codec;
+
+    WireFormat(MessageCodec codec) {
+        this.codec = codec;
+    }
+
+    public MessageCodec getCodec() {
+        return codec;
+    }
+
+    public static WireFormat of(int ordinal) throws ProtocolException {
+        if (ordinal < 0 || ordinal >= VALUES.length) throw new ProtocolException("Неизвестный формат данных " + ordinal);
+        return VALUES[ordinal];
+    }
+}
@@ -0,0 +1,61 @@
+package common.session;
+
+import common.collection.PageCursor;
+
+/**
+ * Класс сессии пользователя, выданной сервером при входе. Команды получают сессию
+ * заполнителем {@link common.commandline.PlaceHolder} и используют id пользователя
+ * для проверки прав, не обращаясь к таблице пользователей
+ */
+public class Session {
+
+    private final long token;
+    private final long userId;
+    private final String login;
+    private final boolean admin;
+    private volatile long expiresAt;
+    private volatile PageCursor cursor;
+
+    Session(long token, long userId, String login, boolean admin, long expiresAt) {
+        this.token = token;
+        this.userId = userId;
+        this.login = login;
+        this.admin = admin;
+        this.expiresAt = expiresAt;
+    }
+
+    public long getToken() {
+        return token;
+    }
+
+    public long getUserId() {
+        return userId;
+    }
+
+    public String getLogin() {
+        return login;
+    }
+
+    public boolean isAdmin() {
+        return admin;
+    }
+
+    /**
+     * @return Курсор постраничного просмотра, открытый в этой сессии, или null
+     */
+    public PageCursor getCursor() {
+        return cursor;
+    }
+
+    public void setCursor(PageCursor cursor) {
+        this.cursor = cursor;
+    }
+
+    boolean isExpired(long now) {
+        return now > expiresAt;
+    }
+
+    void extend(long expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+}
@@ -0,0 +1,57 @@
+package common.session;
+
+import java.security.SecureRandom;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Класс таблицы сессий сервера. Сессия продлевается при каждом обращении
+ * и удаляется, если к ней не обращались дольше времени жизни
+ */
+public class SessionTable {
+
+    /**
+     * Значение токена, означающее отсутствие сессии
+     */
+    public static final long NO_SESSION = 0;
+
+    private final long ttlMillis;
+    private final SecureRandom random = new SecureRandom();
+    private final Map<Long, Session> sessions = new ConcurrentHashMap<>();
+
+    public SessionTable(long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+    }
+
+    public Session open(long userId, String login, boolean admin) {
+        long now = System.currentTimeMillis();
+        sessions.values().removeIf(s -> s.isExpired(now));
+        while (true) {
+            long token = random.nextLong();
+            if (token == NO_SESSION) continue;
+            Session session = new Session(token, userId, login, admin, now + ttlMillis);
+            if (sessions.putIfAbsent(token, session) == null) return session;
+        }
+    }
+
+    /**
+     * @param token Токен сессии
+     * @return Продленная сессия или null, если сессии не существует или она истекла
+     */
+    public Session get(long token) {
+        if (token == NO_SESSION) return null;
+        Session session = sessions.get(token);
+        if (session == null) return null;
+        long now = System.currentTimeMillis();
+        if (session.isExpired(now)) {
+            sessions.remove(token, session);
+            return null;
+        }
+        session.extend(now + ttlMillis);
+        return session;
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+}
@@ -0,0 +1,55 @@
+package common.store;
+
+import common.data.Person;
+import common.session.Session;
+import common.session.SessionTable;
+
+import java.util.List;
+
+/**
+ * Интерфейс хранилища пользователей и людей, через который команды сохраняют изменения коллекции.
+ * Метод изменения возвращает управление после того, как изменение сохранено, а коллекцию команда меняет сама
+ * после успешного вызова. Права на изменение проверяет хранилище: изменять и удалять человека может его создатель
+ * или администратор. Команды получают реализацию заполнителем {@link common.commandline.PlaceHolder},
+ * реализация выбирается на сервере параметром store в connection.properties
+ */
+public interface PeopleStore {
+
+    /**
+     * @return Открытая сессия или null, если логин или пароль неверны
+     */
+    Session logIn(String login, String password, SessionTable sessions) throws StoreException;
+
+    /**
+     * @return false, если пользователь с таким логином уже существует
+     */
+    boolean signUp(String login, String password) throws StoreException;
+
+    /**
+     * Сохраняет человека от имени пользователя сессии
+     *
+     * @return Id, присвоенный человеку, или 0, если человек не сохранен
+     */
+    long add(Person person, Session session) throws StoreException;
+
+    /**
+     * Сохраняет людей от имени пользователя сессии и присваивает им id. Реализация может сохранять людей порциями,
+     * тогда при ошибке люди из уже сохраненных порций получают id, а остальные остаются с id 0
+     */
+    void addAll(List<Person> people, Session session) throws StoreException;
+
+    /**
+     * @return false, если человека нет или пользователь не имеет права на его изменение
+     */
+    boolean update(long id, Person person, Session session) throws StoreException;
+
+    /**
+     * @return false, если человека нет или пользователь не имеет права на его удаление
+     */
+    boolean removeById(long id, Session session) throws StoreException;
+
+    /**
+     * Удаляет всех людей пользователя сессии
+     */
+    void removeByOwner(Session session) throws StoreException;
+}
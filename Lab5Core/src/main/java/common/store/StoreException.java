@@ -0,0 +1,15 @@
+package common.store;
+
+/**
+ * Исключение хранилища людей, оборачивает ошибку конкретной реализации: базы данных или файлов журнала
+ */
+public class StoreException extends Exception {
+
+    public StoreException(String message) {
+        super(message);
+    }
+
+    public StoreException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,37 @@
+package common.store;
+
+import common.collection.PeopleCollection;
+import common.data.Person;
+import common.session.Session;
+
+/**
+ * Интерфейс отложенной записи изменений коллекции в базу данных. Изменение сразу применяется
+ * к коллекции и ставится в очередь, а очередь записывается в базу данных пакетами с одной фиксацией
+ * транзакции на пакет. Права на изменение проверяются по коллекции, так как база данных может
+ * отставать от нее. Команды получают реализацию заполнителем {@link common.commandline.PlaceHolder},
+ * если отложенная запись включена на сервере
+ */
+public interface WriteBehind {
+
+    /**
+     * Присваивает человеку id и создателя, добавляет его в коллекцию и ставит вставку в очередь
+     *
+     * @throws StoreException если не удалось получить id из базы данных
+     */
+    void add(PeopleCollection peopleCollection, Person person, Session session) throws StoreException;
+
+    /**
+     * @return false, если человека нет или пользователь не имеет права на его изменение
+     */
+    boolean update(PeopleCollection peopleCollection, long id, Person person, Session session);
+
+    /**
+     * @return false, если человека нет или пользователь не имеет права на его удаление
+     */
+    boolean removeById(PeopleCollection peopleCollection, long id, Session session);
+
+    /**
+     * @return Количество удаленных людей пользователя
+     */
+    int removeByOwner(PeopleCollection peopleCollection, Session session);
+}
@@ -0,0 +1,198 @@
+package common.util;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Класс потокового чтения записей из файла CSV или JSON Lines. Файл читается по строке, в памяти
+ * хранится только текущая запись. В CSV первая строка содержит имена полей, значения могут быть
+ * в двойных кавычках, кавычка внутри значения удваивается, а значение в кавычках может занимать несколько строк. В JSON Lines каждая строка - плоский объект,
+ * значениями которого могут быть строки, числа, true, false и null, null считается пустым значением
+ */
+public class RecordReader implements Closeable {
+
+    public enum Format {
+        CSV, JSONL;
+
+        /**
+         * @return JSONL для файлов с расширением .jsonl или .json, иначе CSV
+         */
+        public static Format of(String fileName) {
+            String name = fileName.toLowerCase(Locale.ROOT);
+            return name.endsWith(".jsonl") || name.endsWith(".json") ? JSONL : CSV;
+        }
+    }
+
+    private final BufferedReader reader;
+    private final Format format;
+    private List<String> header;
+    private int line;
+
+    public RecordReader(BufferedReader reader, Format format) {
+        this.reader = reader;
+        this.format = format;
+    }
+
+    /**
+     * @return Номер строки файла, из которой прочитана последняя запись
+     */
+    public int getLine() {
+        return line;
+    }
+
+    /**
+     * Читает следующую запись, пустые строки пропускаются
+     *
+     * @return Значения полей по их именам или null, если файл закончился
+     * @throws IllegalArgumentException если строка не является корректной записью, следующие записи можно читать дальше
+     */
+    public Map<String, String> next() throws IOException {
+        String text;
+        do {
+            text = reader.readLine();
+            if (text == null) return null;
+            line++;
+        } while (text.trim().isEmpty());
+        if (format == Format.JSONL) return parseObject(text);
+        List<String> values;
+        while ((values = parseCsv(text)) == null) {
+            String continuation = reader.readLine();
+            if (continuation == null) throw new IllegalArgumentException("не закрыта кавычка");
+            line++;
+            text += "\n" + continuation;
+        }
+        if (header == null) {
+            header = values;
+            return next();
+        }
+        if (values.size() != header.size())
+            throw new IllegalArgumentException(String.format("ожидалось %d значений, получено %d", header.size(), values.size()));
+        Map<String, String> record = new HashMap<>();
+        for (int i = 0; i < values.size(); i++) record.put(header.get(i).trim(), values.get(i));
+        return record;
+    }
+
+    /**
+     * @return Значения строки или null, если кавычка не закрыта и значение продолжается на следующей строке
+     */
+    private static List<String> parseCsv(String text) {
+        List<String> values = new ArrayList<>();
+        StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    value.append(c);
+                } else if (i + 1 < text.length() && text.charAt(i + 1) == '"') {
+                    value.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                values.add(value.toString());
+                value.setLength(0);
+            } else {
+                value.append(c);
+            }
+        }
+        if (quoted) return null;
+        values.add(value.toString());
+        return values;
+    }
+
+    private static Map<String, String> parseObject(String text) {
+        Map<String, String> record = new HashMap<>();
+        int[] pos = {skipSpaces(text, 0)};
+        expect(text, pos, '{');
+        if (peek(text, pos) == '}') {
+            pos[0]++;
+        } else {
+            do {
+                String key = parseString(text, pos);
+                expect(text, pos, ':');
+                String value = parseValue(text, pos);
+                if (value != null) record.put(key, value);
+            } while (consume(text, pos, ','));
+            expect(text, pos, '}');
+        }
+        if (skipSpaces(text, pos[0]) != text.length()) throw new IllegalArgumentException("лишние символы после объекта");
+        return record;
+    }
+
+    private static String parseValue(String text, int[] pos) {
+        if (peek(text, pos) == '"') return parseString(text, pos);
+        int start = pos[0];
+        while (pos[0] < text.length() && ",} \t".indexOf(text.charAt(pos[0])) < 0) pos[0]++;
+        String value = text.substring(start, pos[0]);
+        if (value.isEmpty()) throw new IllegalArgumentException("ожидалось значение в позиции " + start);
+        if (value.equals("null")) return null;
+        if (value.equals("true") || value.equals("false") || UtilFunctions.doubleOrNull(value) != null) return value;
+        throw new IllegalArgumentException("неизвестное значение " + value);
+    }
+
+    private static String parseString(String text, int[] pos) {
+        expect(text, pos, '"');
+        StringBuilder value = new StringBuilder();
+        while (pos[0] < text.length()) {
+            char c = text.charAt(pos[0]++);
+            if (c == '"') return value.toString();
+            if (c != '\\') {
+                value.append(c);
+                continue;
+            }
+            if (pos[0] >= text.length()) break;
+            char escaped = text.charAt(pos[0]++);
+            switch (escaped) {
+                case 'n': value.append('\n'); break;
+                case 't': value.append('\t'); break;
+                case 'r': value.append('\r'); break;
+                case 'b': value.append('\b'); break;
+                case 'f': value.append('\f'); break;
+                case 'u':
+                    if (pos[0] + 4 > text.length()) throw new IllegalArgumentException("неполная последовательность \\u");
+                    value.append((char) Integer.parseInt(text.substring(pos[0], pos[0] + 4), 16));
+                    pos[0] += 4;
+                    break;
+                default: value.append(escaped);
+            }
+        }
+        throw new IllegalArgumentException("не закрыта кавычка");
+    }
+
+    private static char peek(String text, int[] pos) {
+        pos[0] = skipSpaces(text, pos[0]);
+        if (pos[0] >= text.length()) throw new IllegalArgumentException("неожиданный конец строки");
+        return text.charAt(pos[0]);
+    }
+
+    private static boolean consume(String text, int[] pos, char c) {
+        if (peek(text, pos) != c) return false;
+        pos[0]++;
+        return true;
+    }
+
+    private static void expect(String text, int[] pos, char c) {
+        if (!consume(text, pos, c))
+            throw new IllegalArgumentException(String.format("ожидался символ '%s' в позиции %d", c, pos[0]));
+    }
+
+    private static int skipSpaces(String text, int from) {
+        while (from < text.length() && Character.isWhitespace(text.charAt(from))) from++;
+        return from;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
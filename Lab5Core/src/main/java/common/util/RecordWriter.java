@@ -0,0 +1,139 @@
+package common.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Класс потоковой записи записей в файл CSV или JSON Lines в формате, который читает {@link RecordReader}.
+ * Каждая запись форматируется в один переиспользуемый буфер символов и кодируется прямо в буфер байтов,
+ * который записывается в канал по заполнении, поэтому память не зависит от количества записей.
+ * Числа записываются как есть, строки в CSV заключаются в кавычки при необходимости, null записывается
+ * пустым значением в CSV и null в JSON Lines
+ */
+public class RecordWriter implements Closeable {
+
+    private final WritableByteChannel channel;
+    private final RecordReader.Format format;
+    private final String[] keys;
+    private final ByteBuffer buffer;
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+    private final StringBuilder line = new StringBuilder();
+    private long written;
+
+    /**
+     * @param keys Имена полей, для CSV сразу записываются строкой заголовка
+     * @param buffer Буфер, через который выполняется запись, обычно прямой
+     */
+    public RecordWriter(WritableByteChannel channel, RecordReader.Format format, String[] keys, ByteBuffer buffer) throws IOException {
+        this.channel = channel;
+        this.format = format;
+        this.keys = keys;
+        this.buffer = buffer;
+        if (format == RecordReader.Format.CSV) write((Object[]) keys);
+    }
+
+    /**
+     * @param values Значения полей в порядке их имен
+     */
+    public void write(Object... values) throws IOException {
+        line.setLength(0);
+        if (format == RecordReader.Format.CSV) {
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) line.append(',');
+                appendCsv(values[i]);
+            }
+        } else {
+            line.append('{');
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) line.append(", ");
+                appendJsonString(keys[i]);
+                line.append(": ");
+                appendJson(values[i]);
+            }
+            line.append('}');
+        }
+        line.append('\n');
+        CharBuffer chars = CharBuffer.wrap(line);
+        while (true) {
+            CoderResult result = encoder.encode(chars, buffer, true);
+            if (result.isUnderflow()) break;
+            if (result.isOverflow()) flush();
+            else result.throwException();
+        }
+        encoder.reset();
+    }
+
+    private void appendCsv(Object value) {
+        if (value == null) return;
+        String text = value.toString();
+        if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0 && text.indexOf('\r') < 0) {
+            line.append(text);
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"') line.append('"');
+            line.append(c);
+        }
+        line.append('"');
+    }
+
+    private void appendJson(Object value) {
+        if (value == null) {
+            line.append("null");
+        } else if (value instanceof Number && Double.isFinite(((Number) value).doubleValue())) {
+            line.append(value);
+        } else {
+            appendJsonString(value.toString());
+        }
+    }
+
+    private void appendJsonString(String text) {
+        line.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"': line.append("\\\""); break;
+                case '\\': line.append("\\\\"); break;
+                case '\n': line.append("\\n"); break;
+                case '\r': line.append("\\r"); break;
+                case '\t': line.append("\\t"); break;
+                default:
+                    if (c < 0x20) line.append(String.format("\\u%04x", (int) c));
+                    else line.append(c);
+            }
+        }
+        line.append('"');
+    }
+
+    /**
+     * Записывает в канал содержимое буфера
+     */
+    public void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) written += channel.write(buffer);
+        buffer.clear();
+    }
+
+    /**
+     * @return Количество байт, записанных в канал
+     */
+    public long getWritten() {
+        return written;
+    }
+
+    /**
+     * Записывает остаток буфера, канал не закрывается
+     */
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+}
@@ -14,6 +14,16 @@ public final class UtilFunctions {
 
     private UtilFunctions() {}
 
+    /**
+     * Сравнивает значения в естественном порядке, null считается меньше любого значения
+     */
+    public static <T extends Comparable<? super T>> int compareNullsFirst(T a, T b) {
+        if (a == b) return 0;
+        if (a == null) return -1;
+        if (b == null) return 1;
+        return a.compareTo(b);
+    }
+
     public static Integer intOrNull(String number) {
         int result;
         try {
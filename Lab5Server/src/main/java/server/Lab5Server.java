@@ -5,6 +5,7 @@ import common.commandline.pdcommands.PeopleDatabaseCommands;
 import common.net.ConnectionProperties;
 import common.util.UtilFunctions;
 import server.commandline.CommandLineHandlerServer;
+import server.net.RequestPipeline;
 import server.net.UDPServer;
 
 import java.sql.SQLException;
@@ -30,14 +31,23 @@ public class Lab5Server {
             LOGGER.severe("Ошибка при получении коллекции из базы данных");
         }
 
-        // Runtime.getRuntime().addShutdownHook(new Thread());
-
-        Thread conThread = new Thread(() -> {
-            while (true)
-                udp.receive();
-        });
-        conThread.setDaemon(true);
-        conThread.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            udp.saveSnapshot();
+            udp.disconnect();
+        }, "shutdown"));
+
+        if (ConnectionProperties.isPipelineEnabled()) {
+            RequestPipeline pipeline = new RequestPipeline(udp, ConnectionProperties.getWorkerThreads(),
+                    ConnectionProperties.getQueueCapacity(), LOGGER);
+            pipeline.start();
+        } else {
+            Thread conThread = new Thread(() -> {
+                while (true)
+                    udp.receive();
+            });
+            conThread.setDaemon(true);
+            conThread.start();
+        }
 
         cmd.start();
     }
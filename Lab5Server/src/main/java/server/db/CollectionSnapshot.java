@@ -0,0 +1,163 @@
+package server.db;
+
+import common.collection.PeopleCollection;
+import common.data.Person;
+import common.net.protocol.BinaryReader;
+import common.net.protocol.BinaryWriter;
+import common.net.protocol.DataCodec;
+
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Класс двоичного снимка коллекции людей для быстрого перезапуска сервера. Снимок записывается
+ * во временный файл через отображение в память и атомарно заменяет предыдущий, при чтении люди
+ * декодируются прямо из отображенного файла. Вместе с людьми хранится отметка состояния таблицы
+ * людей {@link Mark}, и снимок используется только если отметка совпадает с текущей отметкой в базе данных.
+ *
+ * Формат: магическое число, версия формата, отметка, количество людей, люди в формате
+ * {@link DataCodec#writePerson}, контрольная сумма CRC32 всего предыдущего содержимого
+ */
+public class CollectionSnapshot {
+
+    private static final int MAGIC = 0x4C35534E, FORMAT_VERSION = 1;
+
+    private final Path file;
+    private final Logger logger;
+
+    public CollectionSnapshot(Path file, Logger logger) {
+        this.file = file;
+        this.logger = logger;
+    }
+
+    /**
+     * Загружает коллекцию из снимка
+     *
+     * @param mark Текущая отметка состояния базы данных
+     * @return Коллекция или null, если снимка нет, он поврежден или не соответствует базе данных
+     */
+    public PeopleCollection load(Mark mark) {
+        if (!Files.exists(file)) {
+            logger.info("Снимок коллекции не найден");
+            return null;
+        }
+        long start = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (!checksumMatches(buffer)) {
+                logger.warning("Снимок коллекции поврежден, контрольная сумма не совпадает");
+                return null;
+            }
+            BinaryReader in = new BinaryReader(buffer);
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                logger.warning("Файл снимка коллекции имеет неизвестный формат");
+                return null;
+            }
+            Mark saved = new Mark(in.readLong(), in.readLong(), in.readLong());
+            if (!saved.equals(mark)) {
+                logger.info(String.format("Снимок коллекции устарел: в снимке %s, в базе данных %s", saved, mark));
+                return null;
+            }
+            int count = in.readInt();
+            List<Person> people = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) people.add(DataCodec.readPerson(in));
+            PeopleCollection peopleCollection = new PeopleCollection();
+            peopleCollection.addAll(people);
+            logger.info(String.format("Коллекция загружена из снимка: %d человек, %d байт, %d мс",
+                    count, buffer.capacity(), (System.nanoTime() - start) / 1_000_000));
+            return peopleCollection;
+        } catch (IOException e) {
+            logger.warning("Не удалось прочитать снимок коллекции: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Записывает снимок. Люди и отметка должны соответствовать одному и тому же состоянию базы данных
+     */
+    public void save(Iterable<Person> people, int count, Mark mark) throws IOException {
+        long start = System.nanoTime();
+        BinaryWriter out = BinaryWriter.growable(64 + count * 128);
+        out.writeInt(MAGIC).writeInt(FORMAT_VERSION)
+                .writeLong(mark.count).writeLong(mark.maxId).writeLong(mark.changeSum)
+                .writeInt(count);
+        for (Person person : people) DataCodec.writePerson(out, person);
+        ByteBuffer content = out.getBuffer();
+        content.flip();
+        CRC32 crc = new CRC32();
+        crc.update(content.duplicate());
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, content.remaining() + 4L);
+            mapped.put(content).putInt((int) crc.getValue());
+            mapped.force();
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        logger.info(String.format("Снимок коллекции записан: %d человек, %d байт, %d мс",
+                count, content.limit() + 4, (System.nanoTime() - start) / 1_000_000));
+    }
+
+    private static boolean checksumMatches(ByteBuffer buffer) {
+        if (buffer.capacity() < 4) return false;
+        ByteBuffer content = buffer.duplicate();
+        content.limit(buffer.capacity() - 4);
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        return buffer.getInt(buffer.capacity() - 4) == (int) crc.getValue();
+    }
+
+    /**
+     * Отметка состояния таблицы людей: количество строк, наибольший id и сумма номеров транзакций,
+     * последними изменивших строки. Добавление и удаление меняют количество или наибольший id,
+     * а изменение строки меняет номер ее транзакции и, следовательно, сумму
+     */
+    public static class Mark {
+        private final long count, maxId, changeSum;
+
+        private Mark(long count, long maxId, long changeSum) {
+            this.count = count;
+            this.maxId = maxId;
+            this.changeSum = changeSum;
+        }
+
+        public static Mark read(Connection connection) throws SQLException {
+            try (PreparedStatement statement = connection.prepareStatement(
+                        "SELECT count(*), coalesce(max(id), 0), coalesce(sum(xmin::text::bigint), 0) FROM people;");
+                 ResultSet result = statement.executeQuery()) {
+                result.next();
+                return new Mark(result.getLong(1), result.getLong(2), result.getLong(3));
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Mark)) return false;
+            Mark mark = (Mark) o;
+            return count == mark.count && maxId == mark.maxId && changeSum == mark.changeSum;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(count) * 31 * 31 + Long.hashCode(maxId) * 31 + Long.hashCode(changeSum);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("строк %d, наибольший id %d, сумма транзакций %d", count, maxId, changeSum);
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package server.db;
+
+import common.net.ConnectionProperties;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.*;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Класс пула соединений с базой данных. Соединения выдаются на время выполнения одной команды,
+ * при возврате незавершенная транзакция откатывается, поэтому ошибка одной команды не влияет
+ * на остальные. Пул поддерживает не меньше минимального количества соединений, закрывает
+ * простаивающие сверх минимума, проверяет давно не использованные соединения запросом проверки
+ * и сообщает о соединениях, которые не возвращаются слишком долго. Каждое соединение хранит
+ * кэш подготовленных выражений {@link StatementCache}
+ */
+public class ConnectionPool implements AutoCloseable {
+
+    /**
+     * Соединение, простаивавшее дольше этого времени, проверяется перед выдачей
+     */
+    private static final long VALIDATION_INTERVAL_MS = 5_000;
+    private static final int VALIDATION_TIMEOUT_S = 5;
+
+    private final String url, user, password;
+    private final int maxSize = ConnectionProperties.getDbPoolMaxSize(),
+            minSize = Math.min(ConnectionProperties.getDbPoolMinSize(), maxSize);
+    private final long acquireTimeoutMillis = ConnectionProperties.getDbPoolAcquireTimeout(),
+            idleTimeoutMillis = ConnectionProperties.getDbPoolIdleTimeout(),
+            leakThresholdMillis = ConnectionProperties.getDbPoolLeakThreshold();
+    private final String validationQuery = ConnectionProperties.getDbPoolValidationQuery();
+    private final int statementCacheSize = ConnectionProperties.getStatementCacheSize();
+    private final Logger logger;
+
+    private final Semaphore permits = new Semaphore(maxSize, true);
+    private final Deque<PooledConnection> idle = new ConcurrentLinkedDeque<>();
+    private final Map<Connection, PooledConnection> borrowed = new ConcurrentHashMap<>();
+    private final AtomicInteger total = new AtomicInteger();
+    private final AtomicLong acquired = new AtomicLong(), waitNanos = new AtomicLong(), timeouts = new AtomicLong(),
+            created = new AtomicLong(), evicted = new AtomicLong(), broken = new AtomicLong(),
+            statementHits = new AtomicLong(), statementMisses = new AtomicLong();
+    private final ScheduledExecutorService maintenance;
+    private volatile boolean closed;
+
+    public ConnectionPool(String url, String user, String password, Logger logger) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.logger = logger;
+        this.maintenance = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "db-pool-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Открывает минимальное количество соединений и запускает обслуживание пула
+     *
+     * @throws SQLException если не удалось открыть первое соединение, например, из-за неверного логина или пароля
+     */
+    public void start() throws SQLException {
+        PooledConnection first = open();
+        idle.push(first);
+        try {
+            fill();
+        } catch (SQLException e) {
+            logger.warning("Не удалось открыть минимальное количество соединений с базой данных: " + e.getMessage());
+        }
+        long period = Math.max(1_000, Math.min(idleTimeoutMillis, leakThresholdMillis) / 2);
+        maintenance.scheduleWithFixedDelay(this::maintain, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Выдает соединение из пула, ожидая освобождения не дольше времени ожидания
+     *
+     * @return Соединение с выключенной автофиксацией транзакций
+     * @throws SQLTimeoutException если все соединения заняты дольше времени ожидания
+     * @throws SQLException если не удалось открыть новое соединение
+     */
+    public Connection acquire() throws SQLException {
+        if (closed) throw new SQLException("Пул соединений закрыт");
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                timeouts.incrementAndGet();
+                throw new SQLTimeoutException(String.format("Нет свободных соединений с базой данных в течение %d мс", acquireTimeoutMillis));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Ожидание соединения с базой данных было прервано", e);
+        }
+        try {
+            PooledConnection pooled = take();
+            pooled.borrowedAt = System.currentTimeMillis();
+            pooled.borrower = new Throwable("Соединение выдано потоку " + Thread.currentThread().getName());
+            pooled.leakReported = false;
+            borrowed.put(pooled.proxy, pooled);
+            acquired.incrementAndGet();
+            waitNanos.addAndGet(System.nanoTime() - start);
+            return pooled.proxy;
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Возвращает соединение в пул, незафиксированные изменения откатываются
+     *
+     * @param connection Соединение, полученное из {@link #acquire()}
+     */
+    public void release(Connection connection) {
+        PooledConnection pooled = borrowed.remove(connection);
+        if (pooled == null) return;
+        try {
+            pooled.borrower = null;
+            if (closed) {
+                discard(pooled);
+                return;
+            }
+            int unclosed = pooled.statements.reclaim();
+            if (unclosed > 0)
+                logger.warning(String.format("Команда не закрыла %d подготовленных выражений", unclosed));
+            try {
+                pooled.connection.rollback();
+                pooled.lastUsed = System.currentTimeMillis();
+                idle.push(pooled);
+            } catch (SQLException e) {
+                broken.incrementAndGet();
+                logger.warning("Соединение с базой данных повреждено и будет закрыто: " + e.getMessage());
+                discard(pooled);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    private PooledConnection take() throws SQLException {
+        PooledConnection pooled;
+        while ((pooled = idle.poll()) != null) {
+            if (System.currentTimeMillis() - pooled.lastUsed < VALIDATION_INTERVAL_MS || validate(pooled)) return pooled;
+            broken.incrementAndGet();
+            logger.warning("Соединение с базой данных не прошло проверку и будет закрыто");
+            discard(pooled);
+        }
+        return open();
+    }
+
+    private boolean validate(PooledConnection pooled) {
+        try (Statement statement = pooled.connection.createStatement()) {
+            statement.setQueryTimeout(VALIDATION_TIMEOUT_S);
+            statement.execute(validationQuery);
+            pooled.connection.rollback();
+            return true;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private PooledConnection open() throws SQLException {
+        Connection connection = DriverManager.getConnection(url, user, password);
+        try {
+            connection.setAutoCommit(false);
+        } catch (SQLException e) {
+            connection.close();
+            throw e;
+        }
+        total.incrementAndGet();
+        created.incrementAndGet();
+        return new PooledConnection(connection, new StatementCache(connection, statementCacheSize, statementHits, statementMisses));
+    }
+
+    private void discard(PooledConnection pooled) {
+        total.decrementAndGet();
+        pooled.statements.close();
+        try {
+            pooled.connection.close();
+        } catch (SQLException e) {
+            logger.warning("Не удалось закрыть соединение с базой данных: " + e.getMessage());
+        }
+    }
+
+    private void fill() throws SQLException {
+        while (!closed && total.get() < minSize) idle.push(open());
+    }
+
+    private void maintain() {
+        long now = System.currentTimeMillis();
+        for (PooledConnection pooled : idle) {
+            if (total.get() <= minSize) break;
+            if (now - pooled.lastUsed > idleTimeoutMillis && idle.removeLastOccurrence(pooled)) {
+                evicted.incrementAndGet();
+                discard(pooled);
+            }
+        }
+        for (PooledConnection pooled : borrowed.values()) {
+            Throwable borrower = pooled.borrower;
+            if (borrower == null || pooled.leakReported || now - pooled.borrowedAt <= leakThresholdMillis) continue;
+            pooled.leakReported = true;
+            logger.warning(String.format("Возможна утечка соединения с базой данных: оно не возвращено в пул %d мс",
+                    now - pooled.borrowedAt));
+            borrower.printStackTrace();
+        }
+        try {
+            fill();
+        } catch (SQLException e) {
+            logger.warning("Не удалось восполнить пул соединений с базой данных: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return Строка с текущим состоянием и накопленными показателями пула
+     */
+    public String metrics() {
+        long count = acquired.get(), hits = statementHits.get(), lookups = hits + statementMisses.get();
+        return String.format("соединений %d (занято %d, свободно %d), выдано %d, среднее ожидание %.2f мс, " +
+                        "отказов по таймауту %d, открыто %d, закрыто простаивающих %d, поврежденных %d, " +
+                        "попаданий в кэш выражений %d из %d (%.1f%%)",
+                total.get(), borrowed.size(), idle.size(), count,
+                count == 0 ? 0 : waitNanos.get() / 1e6 / count, timeouts.get(), created.get(), evicted.get(), broken.get(),
+                hits, lookups, lookups == 0 ? 0 : hits * 100.0 / lookups);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        maintenance.shutdownNow();
+        PooledConnection pooled;
+        while ((pooled = idle.poll()) != null) discard(pooled);
+    }
+
+    /**
+     * Соединение пула. Команды получают заместителя соединения, который берет подготовленные выражения
+     * из кэша и не позволяет закрыть соединение, принадлежащее пулу
+     */
+    private static class PooledConnection {
+        private final Connection connection, proxy;
+        private final StatementCache statements;
+        private volatile long lastUsed = System.currentTimeMillis(), borrowedAt;
+        private volatile Throwable borrower;
+        private volatile boolean leakReported;
+
+        private PooledConnection(Connection connection, StatementCache statements) {
+            this.connection = connection;
+            this.statements = statements;
+            this.proxy = (Connection) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, this::invoke);
+        }
+
+        private Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "prepareStatement":
+                    if (args.length == 1) return statements.prepare((String) args[0]);
+                    break;
+                case "close":
+                    return null;
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                case "toString":
+                    return "Pooled" + connection;
+            }
+            try {
+                return method.invoke(connection, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package server.db;
+
+import common.data.Color;
+import common.data.Country;
+import common.util.UtilFunctions;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Класс кэша id справочников цветов и стран. Справочники читаются из базы данных один раз при запуске сервера:
+ * id значений хранятся в массивах, индексированных порядковым номером перечисления, а значения по id -
+ * в массивах, индексированных id. Запросы записывают и читают id напрямую, без соединения таблиц
+ * и сравнения названий
+ */
+public final class Dimensions {
+
+    private final int[] colorIds = new int[Color.values().length], countryIds = new int[Country.values().length];
+    private Color[] colors = new Color[0];
+    private Country[] countries = new Country[0];
+
+    private Dimensions() {
+    }
+
+    /**
+     * Читает справочники. Значение перечисления, которого нет в справочнике, получает id 0,
+     * и запись человека с ним будет отклонена базой данных
+     */
+    public static Dimensions load(Connection connection) throws SQLException {
+        Dimensions dimensions = new Dimensions();
+        dimensions.colors = read(connection, "colors", Color.class, dimensions.colorIds);
+        dimensions.countries = read(connection, "countries", Country.class, dimensions.countryIds);
+        return dimensions;
+    }
+
+    private static <T extends Enum<T>> T[] read(Connection connection, String table, Class<T> type, int[] ids) throws SQLException {
+        T[] values = type.getEnumConstants();
+        try (PreparedStatement statement = connection.prepareStatement("SELECT id, name FROM " + table + ";");
+             ResultSet result = statement.executeQuery()) {
+            while (result.next()) {
+                T value = UtilFunctions.enumOrNull(result.getString(2).toUpperCase(Locale.ROOT), type);
+                if (value != null) ids[value.ordinal()] = result.getInt(1);
+            }
+        }
+        int max = 0;
+        for (int id : ids) max = Math.max(max, id);
+        T[] byId = Arrays.copyOf(values, max + 1);
+        Arrays.fill(byId, null);
+        for (T value : values) if (ids[value.ordinal()] > 0) byId[ids[value.ordinal()]] = value;
+        return byId;
+    }
+
+    public int idOf(Color color) {
+        return colorIds[color.ordinal()];
+    }
+
+    public int idOf(Country country) {
+        return countryIds[country.ordinal()];
+    }
+
+    /**
+     * @return Цвет с заданным id или null, если его нет в справочнике
+     */
+    public Color color(int id) {
+        return id > 0 && id < colors.length ? colors[id] : null;
+    }
+
+    /**
+     * @return Страна с заданным id или null, если ее нет в справочнике
+     */
+    public Country country(int id) {
+        return id > 0 && id < countries.length ? countries[id] : null;
+    }
+}
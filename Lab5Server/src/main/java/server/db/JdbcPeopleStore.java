@@ -0,0 +1,303 @@
+package server.db;
+
+import common.data.Person;
+import common.session.Session;
+import common.session.SessionTable;
+import common.store.PeopleStore;
+import common.store.StoreException;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.List;
+import java.util.StringJoiner;
+
+/**
+ * Хранилище людей в базе данных PostgreSQL. Каждая операция выполняется одной транзакцией на соединении из пула,
+ * соединение возвращается в пул сразу после операции
+ */
+public class JdbcPeopleStore implements PeopleStore {
+
+    /**
+     * Строк в одном многострочном INSERT: у PostgreSQL не больше 32767 параметров в запросе,
+     * а строка людей занимает 9 параметров
+     */
+    private static final int MAX_BATCH_SIZE = 5000, ROWS_PER_STATEMENT = 1000;
+
+    private final ConnectionPool pool;
+    private final Dimensions dimensions;
+
+    public JdbcPeopleStore(ConnectionPool pool, Dimensions dimensions) {
+        this.pool = pool;
+        this.dimensions = dimensions;
+    }
+
+    /**
+     * Привязка параметров одной строки многострочного INSERT
+     */
+    private interface RowBinder {
+        /**
+         * @return Номер параметра, следующего за параметрами строки
+         */
+        int bind(PreparedStatement statement, int row, int index) throws SQLException;
+    }
+
+    /**
+     * Операция над соединением, выполняемая одной транзакцией
+     */
+    private interface Transaction<T> {
+        T run(Connection connection) throws SQLException;
+    }
+
+    /**
+     * Выполняет операцию и фиксирует ее, при ошибке изменения откатываются при возврате соединения в пул
+     */
+    private <T> T transaction(Transaction<T> transaction) throws StoreException {
+        Connection connection;
+        try {
+            connection = pool.acquire();
+        } catch (SQLException e) {
+            throw new StoreException("Не удалось получить соединение с базой данных: " + e.getMessage(), e);
+        }
+        try {
+            T result = transaction.run(connection);
+            connection.commit();
+            return result;
+        } catch (SQLException e) {
+            throw new StoreException(e.getMessage(), e);
+        } finally {
+            pool.release(connection);
+        }
+    }
+
+    @Override
+    public Session logIn(String login, String password, SessionTable sessions) throws StoreException {
+        return transaction(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(
+                            "SELECT id, is_admin FROM users " +
+                                "WHERE login = ? AND password = ?;"
+                )) {
+                statement.setString(1, login);
+                statement.setString(2, password);
+                try (ResultSet result = statement.executeQuery()) {
+                    return result.next() ? sessions.open(result.getLong(1), login, result.getBoolean(2)) : null;
+                }
+            }
+        });
+    }
+
+    @Override
+    public boolean signUp(String login, String password) throws StoreException {
+        try {
+            return transaction(connection -> {
+                try (PreparedStatement statement = connection.prepareStatement(
+                            "INSERT INTO users (login, password) " +
+                                    "VALUES(?, ?);"
+                    )) {
+                    statement.setString(1, login);
+                    statement.setString(2, password);
+                    statement.executeUpdate();
+                    return true;
+                }
+            });
+        } catch (StoreException e) {
+            if (e.getCause() instanceof SQLException && "23505".equals(((SQLException) e.getCause()).getSQLState()))
+                return false;
+            throw e;
+        }
+    }
+
+    @Override
+    public long add(Person person, Session session) throws StoreException {
+        return transaction(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(
+                        "WITH c AS (INSERT INTO coordinates (x, y) VALUES (?, ?) RETURNING id), " +
+                            "l AS (INSERT INTO locations (x, y, z, name) VALUES (?, ?, ?, ?) RETURNING id) " +
+                            "INSERT INTO people (name, coordinates_id, height, passport, color_id, country_id, location_id, owner_id) " +
+                            "SELECT ?, c.id, ?, ?, ?, ?, l.id, ? FROM c, l " +
+                            "RETURNING people.id;"
+                )) {
+                statement.setFloat(1, person.getCoordinates().getX());
+                statement.setFloat(2, person.getCoordinates().getY());
+                statement.setDouble(3, person.getLocation().getX());
+                statement.setFloat(4, person.getLocation().getY());
+                statement.setLong(5, person.getLocation().getZ());
+                statement.setString(6, person.getLocation().getName());
+                statement.setString(7, person.getName());
+                if (person.getHeight() == null) statement.setNull(8, Types.INTEGER);
+                else statement.setInt(8, person.getHeight());
+                statement.setString(9, person.getPassportID());
+                statement.setInt(10, dimensions.idOf(person.getEyeColor()));
+                statement.setInt(11, dimensions.idOf(person.getNationality()));
+                statement.setLong(12, session.getUserId());
+                try (ResultSet result = statement.executeQuery()) {
+                    long id = result.next() ? result.getLong(1) : 0;
+                    if (id <= 0) connection.rollback();
+                    return id;
+                }
+            }
+        });
+    }
+
+    /**
+     * Вставляет людей многострочными INSERT с заранее выбранными из последовательностей id,
+     * каждая порция до {@value MAX_BATCH_SIZE} строк фиксируется своей транзакцией
+     */
+    @Override
+    public void addAll(List<Person> people, Session session) throws StoreException {
+        for (int from = 0; from < people.size(); from += MAX_BATCH_SIZE) {
+            List<Person> batch = people.subList(from, Math.min(from + MAX_BATCH_SIZE, people.size()));
+            long[] ids = transaction(connection -> insert(connection, batch, session.getUserId()));
+            for (int i = 0; i < ids.length; i++) batch.get(i).setId(ids[i]);
+        }
+    }
+
+    private long[] insert(Connection connection, List<Person> batch, long ownerId) throws SQLException {
+        int n = batch.size();
+        long[] coordinateIds = new long[n], locationIds = new long[n], personIds = new long[n];
+        try (PreparedStatement statement = connection.prepareStatement(
+                    "SELECT nextval(pg_get_serial_sequence('coordinates', 'id')), " +
+                        "nextval(pg_get_serial_sequence('locations', 'id')), " +
+                        "nextval(pg_get_serial_sequence('people', 'id')) FROM generate_series(1, ?);")) {
+            statement.setInt(1, n);
+            try (ResultSet result = statement.executeQuery()) {
+                for (int i = 0; i < n && result.next(); i++) {
+                    coordinateIds[i] = result.getLong(1);
+                    locationIds[i] = result.getLong(2);
+                    personIds[i] = result.getLong(3);
+                }
+            }
+        }
+        insertRows(connection, "INSERT INTO coordinates (id, x, y)", 3, n, (statement, i, k) -> {
+            Person person = batch.get(i);
+            statement.setLong(k++, coordinateIds[i]);
+            statement.setFloat(k++, person.getCoordinates().getX());
+            statement.setFloat(k++, person.getCoordinates().getY());
+            return k;
+        });
+        insertRows(connection, "INSERT INTO locations (id, x, y, z, name)", 5, n, (statement, i, k) -> {
+            Person person = batch.get(i);
+            statement.setLong(k++, locationIds[i]);
+            statement.setDouble(k++, person.getLocation().getX());
+            statement.setFloat(k++, person.getLocation().getY());
+            statement.setLong(k++, person.getLocation().getZ());
+            statement.setString(k++, person.getLocation().getName());
+            return k;
+        });
+        insertRows(connection, "INSERT INTO people " +
+                "(id, name, coordinates_id, height, passport, color_id, country_id, location_id, owner_id)", 9, n, (statement, i, k) -> {
+            Person person = batch.get(i);
+            statement.setLong(k++, personIds[i]);
+            statement.setString(k++, person.getName());
+            statement.setLong(k++, coordinateIds[i]);
+            if (person.getHeight() == null) statement.setNull(k++, Types.INTEGER);
+            else statement.setInt(k++, person.getHeight());
+            statement.setString(k++, person.getPassportID());
+            statement.setInt(k++, dimensions.idOf(person.getEyeColor()));
+            statement.setInt(k++, dimensions.idOf(person.getNationality()));
+            statement.setLong(k++, locationIds[i]);
+            statement.setLong(k++, ownerId);
+            return k;
+        });
+        return personIds;
+    }
+
+    /**
+     * Вставляет rows строк INSERT-ами ровно на {@value ROWS_PER_STATEMENT} строк, остаток вставляется
+     * пакетом однострочных INSERT, поэтому кэш подготовленных запросов получает не больше двух текстов на таблицу
+     */
+    private static void insertRows(Connection connection, String insert, int columns, int rows, RowBinder binder) throws SQLException {
+        int full = rows - rows % ROWS_PER_STATEMENT;
+        if (full > 0) {
+            try (PreparedStatement statement = connection.prepareStatement(values(insert, columns, ROWS_PER_STATEMENT))) {
+                for (int from = 0; from < full; from += ROWS_PER_STATEMENT) {
+                    int k = 1;
+                    for (int i = from; i < from + ROWS_PER_STATEMENT; i++) k = binder.bind(statement, i, k);
+                    statement.executeUpdate();
+                }
+            }
+        }
+        if (full < rows) {
+            try (PreparedStatement statement = connection.prepareStatement(values(insert, columns, 1))) {
+                for (int i = full; i < rows; i++) {
+                    binder.bind(statement, i, 1);
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+        }
+    }
+
+    /**
+     * @return Многострочный INSERT на rows строк по columns параметров
+     */
+    private static String values(String insert, int columns, int rows) {
+        StringBuilder row = new StringBuilder("(?");
+        for (int i = 1; i < columns; i++) row.append(", ?");
+        row.append(")");
+        StringJoiner sql = new StringJoiner(", ", insert + " VALUES ", ";");
+        for (int i = 0; i < rows; i++) sql.add(row);
+        return sql.toString();
+    }
+
+    @Override
+    public boolean update(long id, Person person, Session session) throws StoreException {
+        return transaction(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(
+                        "WITH target AS (SELECT coordinates_id, location_id FROM people WHERE id = ? AND (owner_id = ? OR ?)), " +
+                            "c AS (UPDATE coordinates SET x = ?, y = ? FROM target WHERE coordinates.id = target.coordinates_id), " +
+                            "l AS (UPDATE locations SET x = ?, y = ?, z = ?, name = ? FROM target WHERE locations.id = target.location_id) " +
+                            "UPDATE people SET name = ?, height = ?, passport = ?, color_id = ?, country_id = ? " +
+                            "FROM target WHERE people.id = ?;"
+                )) {
+                statement.setLong(1, id);
+                statement.setLong(2, session.getUserId());
+                statement.setBoolean(3, session.isAdmin());
+                statement.setFloat(4, person.getCoordinates().getX());
+                statement.setFloat(5, person.getCoordinates().getY());
+                statement.setDouble(6, person.getLocation().getX());
+                statement.setFloat(7, person.getLocation().getY());
+                statement.setLong(8, person.getLocation().getZ());
+                statement.setString(9, person.getLocation().getName());
+                statement.setString(10, person.getName());
+                if (person.getHeight() == null) statement.setNull(11, Types.INTEGER);
+                else statement.setInt(11, person.getHeight());
+                statement.setString(12, person.getPassportID());
+                statement.setInt(13, dimensions.idOf(person.getEyeColor()));
+                statement.setInt(14, dimensions.idOf(person.getNationality()));
+                statement.setLong(15, id);
+                return statement.executeUpdate() > 0;
+            }
+        });
+    }
+
+    @Override
+    public boolean removeById(long id, Session session) throws StoreException {
+        return transaction(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(
+                            "DELETE FROM people " +
+                                "WHERE id = ? AND (owner_id = ? OR ?);"
+                )) {
+                statement.setLong(1, id);
+                statement.setLong(2, session.getUserId());
+                statement.setBoolean(3, session.isAdmin());
+                return statement.executeUpdate() > 0;
+            }
+        });
+    }
+
+    @Override
+    public void removeByOwner(Session session) throws StoreException {
+        transaction(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(
+                            "DELETE FROM people " +
+                                "WHERE owner_id = ?;"
+                )) {
+                statement.setLong(1, session.getUserId());
+                return statement.executeUpdate();
+            }
+        });
+    }
+}
@@ -0,0 +1,137 @@
+package server.db;
+
+import common.collection.PeopleCollection;
+import common.data.*;
+import common.net.ConnectionProperties;
+
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.logging.Logger;
+
+/**
+ * Класс загрузки коллекции людей из базы данных при запуске сервера. Строки читаются курсором
+ * порциями заданного размера, при нескольких частях диапазон id делится между соединениями пула
+ * и части читаются параллельно. Цвета и страны читаются как id и переводятся в значения через {@link Dimensions}.
+ * Коллекция строится целиком из прочитанных людей
+ */
+public class PeopleLoader {
+
+    private static final String QUERY = "SELECT people.id, people.name, coordinates.x, coordinates.y, height, passport, " +
+            "color_id, country_id, locations.x, locations.y, locations.z, locations.name, login FROM people " +
+            "JOIN coordinates ON coordinates.id = coordinates_id " +
+            "JOIN locations ON locations.id = location_id " +
+            "JOIN users ON users.id = owner_id ";
+
+    private final ConnectionPool connectionPool;
+    private final Dimensions dimensions;
+    private final Logger logger;
+    private final int fetchSize = ConnectionProperties.getDbFetchSize();
+    private final int partitions = Math.min(ConnectionProperties.getDbLoadPartitions(), ConnectionProperties.getDbPoolMaxSize());
+
+    public PeopleLoader(ConnectionPool connectionPool, Dimensions dimensions, Logger logger) {
+        this.connectionPool = connectionPool;
+        this.dimensions = dimensions;
+        this.logger = logger;
+    }
+
+    public PeopleCollection load() throws SQLException {
+        long start = System.nanoTime();
+        List<Person> people = partitions > 1 ? readPartitioned() : read(null);
+        long read = System.nanoTime();
+        PeopleCollection peopleCollection = new PeopleCollection();
+        peopleCollection.addAll(people);
+        long built = System.nanoTime();
+        logger.info(String.format("Коллекция получена: %d человек, частей %d, размер порции %d, " +
+                        "чтение %d мс, построение %d мс, всего %d мс",
+                peopleCollection.getCollection().size(), partitions, fetchSize,
+                TimeUnit.NANOSECONDS.toMillis(read - start), TimeUnit.NANOSECONDS.toMillis(built - read),
+                TimeUnit.NANOSECONDS.toMillis(built - start)));
+        return peopleCollection;
+    }
+
+    private List<Person> readPartitioned() throws SQLException {
+        long min, max;
+        Connection connection = connectionPool.acquire();
+        try (PreparedStatement statement = connection.prepareStatement("SELECT min(id), max(id) FROM people;");
+             ResultSet result = statement.executeQuery()) {
+            result.next();
+            min = result.getLong(1);
+            max = result.getLong(2);
+            if (result.wasNull()) return new ArrayList<>();
+        } finally {
+            connectionPool.release(connection);
+        }
+        long step = (max - min) / partitions + 1;
+        ExecutorService executor = Executors.newFixedThreadPool(partitions, r -> {
+            Thread thread = new Thread(r, "db-loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<List<Person>>> parts = new ArrayList<>();
+            for (long from = min; from <= max; from += step) {
+                long[] range = {from, Math.min(max, from + step - 1)};
+                parts.add(executor.submit(() -> read(range)));
+            }
+            List<Person> people = new ArrayList<>();
+            for (Future<List<Person>> part : parts) people.addAll(part.get());
+            return people;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Загрузка коллекции была прервана", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SQLException) throw (SQLException) e.getCause();
+            throw new SQLException("Не удалось загрузить часть коллекции", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Читает людей курсором, соединения пула работают без автофиксации, поэтому драйвер
+     * получает строки порциями размера выборки, а не весь результат сразу. Люди с цветом или страной,
+     * которых нет в справочниках или в перечислениях, пропускаются с предупреждением
+     *
+     * @param range Границы id части включительно или null для всей таблицы
+     */
+    private List<Person> read(long[] range) throws SQLException {
+        List<Person> people = new ArrayList<>();
+        int skipped = 0;
+        long firstSkipped = 0;
+        Connection connection = connectionPool.acquire();
+        try (PreparedStatement statement = connection.prepareStatement(
+                range == null ? QUERY + ";" : QUERY + "WHERE people.id BETWEEN ? AND ?;")) {
+            if (range != null) {
+                statement.setLong(1, range[0]);
+                statement.setLong(2, range[1]);
+            }
+            statement.setFetchSize(fetchSize);
+            try (ResultSet result = statement.executeQuery()) {
+                while (result.next()) {
+                    long id = result.getLong(1);
+                    String name = result.getString(2);
+                    Coordinates coordinates = new Coordinates(result.getFloat(3), result.getFloat(4));
+                    int height = result.getInt(5);
+                    Integer nullableHeight = result.wasNull() ? null : height;
+                    String passport = result.getString(6);
+                    Color color = dimensions.color(result.getInt(7));
+                    Country country = dimensions.country(result.getInt(8));
+                    if (color == null || country == null) {
+                        if (skipped++ == 0) firstSkipped = id;
+                        continue;
+                    }
+                    Location location = new Location(result.getDouble(9), result.getFloat(10), result.getLong(11), result.getString(12));
+                    String owner = result.getString(13);
+                    people.add(new Person(id, name, coordinates, nullableHeight, passport, color, country, location, owner));
+                }
+            }
+        } finally {
+            connectionPool.release(connection);
+        }
+        if (skipped > 0)
+            logger.warning(String.format("Пропущено %d человек с неизвестным цветом или страной, первый из них с id %d",
+                    skipped, firstSkipped));
+        return people;
+    }
+}
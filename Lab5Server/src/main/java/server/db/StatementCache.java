@@ -0,0 +1,134 @@
+package server.db;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Класс кэша подготовленных выражений одного соединения, ключом служит текст запроса.
+ * Выдаваемое выражение при закрытии не закрывается, а возвращается в кэш с очищенными параметрами.
+ * При превышении размера закрываются давно не использованные выражения
+ */
+class StatementCache {
+
+    private final Connection connection;
+    private final int capacity;
+    private final AtomicLong hits, misses;
+    private final Map<String, PreparedStatement> statements;
+    private final Set<CachedStatement> checkedOut = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    StatementCache(Connection connection, int capacity, AtomicLong hits, AtomicLong misses) {
+        this.connection = connection;
+        this.capacity = capacity;
+        this.hits = hits;
+        this.misses = misses;
+        this.statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() <= StatementCache.this.capacity) return false;
+                closeQuietly(eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Выдает подготовленное выражение из кэша или готовит новое. Пока выражение не закрыто,
+     * оно не выдается повторно, одновременные запросы с тем же текстом получают отдельные выражения
+     */
+    synchronized PreparedStatement prepare(String sql) throws SQLException {
+        PreparedStatement statement = statements.remove(sql);
+        if (statement != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+            statement = connection.prepareStatement(sql);
+        }
+        CachedStatement cached = new CachedStatement(sql, statement);
+        checkedOut.add(cached);
+        return (PreparedStatement) Proxy.newProxyInstance(StatementCache.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class}, cached::invoke);
+    }
+
+    /**
+     * Возвращает в кэш выражения, которые команда не закрыла, вызывается при возврате соединения в пул
+     *
+     * @return Количество незакрытых выражений
+     */
+    synchronized int reclaim() {
+        int count = checkedOut.size();
+        for (CachedStatement cached : new ArrayList<>(checkedOut)) {
+            cached.closed = true;
+            checkIn(cached);
+        }
+        return count;
+    }
+
+    synchronized void close() {
+        for (CachedStatement cached : checkedOut) closeQuietly(cached.statement);
+        checkedOut.clear();
+        for (PreparedStatement statement : statements.values()) closeQuietly(statement);
+        statements.clear();
+    }
+
+    private synchronized void checkIn(CachedStatement cached) {
+        if (!checkedOut.remove(cached)) return;
+        try {
+            cached.statement.clearParameters();
+        } catch (SQLException e) {
+            closeQuietly(cached.statement);
+            return;
+        }
+        PreparedStatement previous = statements.put(cached.sql, cached.statement);
+        if (previous != null) closeQuietly(previous);
+    }
+
+    private static void closeQuietly(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException ignored) {
+            // Выражение уже недействительно, закрывать нечего
+        }
+    }
+
+    private class CachedStatement {
+        private final String sql;
+        private final PreparedStatement statement;
+        private volatile boolean closed;
+
+        private CachedStatement(String sql, PreparedStatement statement) {
+            this.sql = sql;
+            this.statement = statement;
+        }
+
+        private Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        checkIn(this);
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || statement.isClosed();
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                case "toString":
+                    return "Cached" + statement;
+            }
+            if (closed) throw new SQLException("Выражение закрыто");
+            try {
+                return method.invoke(statement, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
@@ -0,0 +1,402 @@
+package server.db;
+
+import common.collection.PeopleCollection;
+import common.collection.PersistentTreeSet;
+import common.data.Person;
+import common.net.ConnectionProperties;
+import common.session.Session;
+import common.store.StoreException;
+import common.store.WriteBehind;
+
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Класс очереди отложенной записи. Изменения применяются к коллекции и ставятся в очередь под одной
+ * блокировкой, поэтому порядок изменений в очереди совпадает с порядком их применения. Поток записи
+ * забирает из очереди пакет, когда в ней набирается размер пакета или самое старое изменение ждет
+ * дольше интервала записи, выполняет подряд идущие изменения одного вида одним пакетом JDBC
+ * и фиксирует весь пакет одной транзакцией. Если пакет не удалось записать, изменения записываются
+ * по одному, а не записанные изменения отменяются в коллекции, если их не перекрыли более поздние изменения.
+ * Id новых людей заранее выбираются из последовательности таблицы людей. Команды, сохраняющие людей в хранилище
+ * мимо очереди (импорт), выполняются после {@link #flush()}, иначе более ранние изменения из очереди,
+ * например удаление всех людей пользователя, были бы записаны после них
+ */
+public class WriteBehindQueue implements WriteBehind, AutoCloseable {
+
+    private static final String INSERT =
+            "WITH c AS (INSERT INTO coordinates (x, y) VALUES (?, ?) RETURNING id), " +
+                "l AS (INSERT INTO locations (x, y, z, name) VALUES (?, ?, ?, ?) RETURNING id) " +
+                "INSERT INTO people (id, name, coordinates_id, height, passport, color_id, country_id, location_id, owner_id) " +
+                "SELECT ?, ?, c.id, ?, ?, ?, ?, l.id, ? FROM c, l;",
+            UPDATE =
+            "WITH target AS (SELECT coordinates_id, location_id FROM people WHERE id = ?), " +
+                "c AS (UPDATE coordinates SET x = ?, y = ? FROM target WHERE coordinates.id = target.coordinates_id), " +
+                "l AS (UPDATE locations SET x = ?, y = ?, z = ?, name = ? FROM target WHERE locations.id = target.location_id) " +
+                "UPDATE people SET name = ?, height = ?, passport = ?, color_id = ?, country_id = ? " +
+                "FROM target WHERE people.id = ?;",
+            DELETE = "DELETE FROM people WHERE id = ?;",
+            DELETE_OWNED = "DELETE FROM people WHERE owner_id = ?;",
+            NEXT_IDS = "SELECT nextval(pg_get_serial_sequence('people', 'id')) FROM generate_series(1, ?);";
+
+    private static final int MAX_ACQUIRE_ATTEMPTS = 8;
+    private static final long INITIAL_BACKOFF_MILLIS = 100, MAX_BACKOFF_MILLIS = 5000;
+
+    private final ConnectionPool connectionPool;
+    private final Dimensions dimensions;
+    private final Logger logger;
+    private final int batchSize = ConnectionProperties.getWriteBehindBatchSize();
+    private final long flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(ConnectionProperties.getWriteBehindFlushInterval());
+
+    private final Object lock = new Object();
+    private final Deque<Mutation> queue = new ArrayDeque<>();
+    /**
+     * Отдельная блокировка запаса id, чтобы запрос к последовательности не задерживал очередь изменений
+     */
+    private final Object idLock = new Object();
+    private final Deque<Long> ids = new ArrayDeque<>();
+    private final ThreadLocal<Mutation> lastSubmitted = new ThreadLocal<>();
+    private final Thread writer;
+    private long submitted, written;
+    private boolean flushRequested, closed;
+
+    private long flushes, failed, latencyNanos, maxLatencyNanos;
+
+    public WriteBehindQueue(ConnectionPool connectionPool, Dimensions dimensions, Logger logger) {
+        this.connectionPool = connectionPool;
+        this.dimensions = dimensions;
+        this.logger = logger;
+        this.writer = new Thread(this::run, "write-behind-flusher");
+        this.writer.setDaemon(true);
+    }
+
+    public void start() {
+        writer.start();
+    }
+
+    @Override
+    public void add(PeopleCollection peopleCollection, Person person, Session session) throws StoreException {
+        try {
+            person.setId(nextId());
+        } catch (SQLException e) {
+            throw new StoreException("Не удалось получить id из базы данных", e);
+        }
+        synchronized (lock) {
+            person.setOwner(session.getLogin());
+            peopleCollection.add(person);
+            long id = person.getId();
+            submit(new Mutation(INSERT, () -> {
+                if (peopleCollection.get(id) == person) peopleCollection.removeById(id);
+            }, statement -> {
+                bindPerson(statement, person, 1);
+                statement.setLong(7, person.getId());
+                statement.setString(8, person.getName());
+                setHeight(statement, 9, person.getHeight());
+                statement.setString(10, person.getPassportID());
+                statement.setInt(11, dimensions.idOf(person.getEyeColor()));
+                statement.setInt(12, dimensions.idOf(person.getNationality()));
+                statement.setLong(13, session.getUserId());
+            }));
+        }
+    }
+
+    @Override
+    public boolean update(PeopleCollection peopleCollection, long id, Person person, Session session) {
+        synchronized (lock) {
+            Person previous = peopleCollection.get(id);
+            if (!mayModify(previous, session) || !peopleCollection.update(id, person)) return false;
+            Person updated = peopleCollection.get(id);
+            submit(new Mutation(UPDATE, () -> {
+                if (peopleCollection.get(id) == updated) peopleCollection.add(previous);
+            }, statement -> {
+                statement.setLong(1, id);
+                bindPerson(statement, person, 2);
+                statement.setString(8, person.getName());
+                setHeight(statement, 9, person.getHeight());
+                statement.setString(10, person.getPassportID());
+                statement.setInt(11, dimensions.idOf(person.getEyeColor()));
+                statement.setInt(12, dimensions.idOf(person.getNationality()));
+                statement.setLong(13, id);
+            }));
+            return true;
+        }
+    }
+
+    @Override
+    public boolean removeById(PeopleCollection peopleCollection, long id, Session session) {
+        synchronized (lock) {
+            Person previous = peopleCollection.get(id);
+            if (!mayModify(previous, session) || !peopleCollection.removeById(id)) return false;
+            submit(new Mutation(DELETE, () -> {
+                if (peopleCollection.get(id) == null) peopleCollection.add(previous);
+            }, statement -> statement.setLong(1, id)));
+            return true;
+        }
+    }
+
+    @Override
+    public int removeByOwner(PeopleCollection peopleCollection, Session session) {
+        synchronized (lock) {
+            PersistentTreeSet<Person> owned = peopleCollection.getByOwner(session.getLogin());
+            int removed = peopleCollection.removeByOwner(session.getLogin());
+            submit(new Mutation(DELETE_OWNED, () -> {
+                for (Person person : owned)
+                    if (peopleCollection.get(person.getId()) == null) peopleCollection.add(person);
+            }, statement -> statement.setLong(1, session.getUserId())));
+            return removed;
+        }
+    }
+
+    private static boolean mayModify(Person person, Session session) {
+        return person != null && (session.isAdmin() || session.getLogin().equals(person.getOwner()));
+    }
+
+    private long nextId() throws SQLException {
+        synchronized (idLock) {
+            if (ids.isEmpty()) {
+                Connection connection = connectionPool.acquire();
+                try (PreparedStatement statement = connection.prepareStatement(NEXT_IDS)) {
+                    statement.setInt(1, batchSize);
+                    try (ResultSet result = statement.executeQuery()) {
+                        while (result.next()) ids.add(result.getLong(1));
+                    }
+                    connection.commit();
+                } finally {
+                    connectionPool.release(connection);
+                }
+            }
+            return ids.remove();
+        }
+    }
+
+    private void submit(Mutation mutation) {
+        mutation.sequence = ++submitted;
+        queue.add(mutation);
+        lastSubmitted.set(mutation);
+        if (queue.size() == 1 || queue.size() >= batchSize) lock.notifyAll();
+    }
+
+    /**
+     * Забывает изменение, поставленное текущим потоком в очередь при выполнении предыдущего запроса
+     */
+    public void forgetSubmitted() {
+        lastSubmitted.remove();
+    }
+
+    /**
+     * Ожидает записи в базу данных последнего изменения, поставленного в очередь текущим потоком
+     *
+     * @return true, если изменение записано или поток не ставил изменений в очередь
+     */
+    public boolean awaitDurable() throws InterruptedException {
+        Mutation mutation = lastSubmitted.get();
+        if (mutation == null) return true;
+        lastSubmitted.remove();
+        synchronized (lock) {
+            while (written < mutation.sequence) lock.wait();
+        }
+        return mutation.durable;
+    }
+
+    /**
+     * Записывает все поставленные в очередь изменения и ожидает их фиксации
+     */
+    public void flush() throws InterruptedException {
+        synchronized (lock) {
+            long target = submitted;
+            flushRequested = true;
+            lock.notifyAll();
+            while (written < target) lock.wait();
+        }
+    }
+
+    /**
+     * @return Количество изменений, поставленных в очередь, но еще не записанных
+     */
+    public long pending() {
+        synchronized (lock) {
+            return submitted - written;
+        }
+    }
+
+    private void run() {
+        List<Mutation> batch = new ArrayList<>(batchSize);
+        try {
+            while (true) {
+                synchronized (lock) {
+                    while (queue.isEmpty() && !closed) lock.wait();
+                    if (queue.isEmpty()) return;
+                    long waitNanos;
+                    while (queue.size() < batchSize && !flushRequested && !closed
+                            && (waitNanos = queue.peek().submittedAt + flushIntervalNanos - System.nanoTime()) > 0)
+                        TimeUnit.NANOSECONDS.timedWait(lock, waitNanos);
+                    while (batch.size() < batchSize && !queue.isEmpty()) batch.add(queue.poll());
+                    if (queue.isEmpty()) flushRequested = false;
+                }
+                write(batch);
+                synchronized (lock) {
+                    // Отмена выполняется до отметки записи, поэтому снимок коллекции не увидит не записанное изменение
+                    for (int i = batch.size() - 1; i >= 0; i--)
+                        if (!batch.get(i).durable) batch.get(i).undo.run();
+                    written = batch.get(batch.size() - 1).sequence;
+                    long now = System.nanoTime();
+                    flushes++;
+                    for (Mutation mutation : batch) {
+                        long latency = now - mutation.submittedAt;
+                        latencyNanos += latency;
+                        maxLatencyNanos = Math.max(maxLatencyNanos, latency);
+                        if (!mutation.durable) failed++;
+                    }
+                    lock.notifyAll();
+                }
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Записывает пакет изменений. Соединение запрашивается повторно с экспоненциальной задержкой,
+     * после {@value MAX_ACQUIRE_ATTEMPTS} неудачных попыток пакет считается не записанным
+     */
+    private void write(List<Mutation> batch) {
+        Connection connection = acquire();
+        if (connection == null) {
+            logger.severe("Не удалось получить соединение для отложенной записи, " + batch.size() + " изменений отменено в коллекции");
+            return;
+        }
+        try {
+            execute(connection, batch);
+            connection.commit();
+            for (Mutation mutation : batch) mutation.durable = true;
+        } catch (SQLException e) {
+            logger.warning("Не удалось записать пакет изменений, изменения записываются по одному: " + e.getMessage());
+            rollback(connection);
+            for (Mutation mutation : batch) {
+                try {
+                    execute(connection, Collections.singletonList(mutation));
+                    connection.commit();
+                    mutation.durable = true;
+                } catch (SQLException single) {
+                    rollback(connection);
+                    logger.severe("Изменение не записано в базу данных и отменено в коллекции: " + single.getMessage());
+                }
+            }
+        } finally {
+            connectionPool.release(connection);
+        }
+    }
+
+    /**
+     * @return Соединение из пула или null, если попытки исчерпаны или поток прерван
+     */
+    private Connection acquire() {
+        long backoff = INITIAL_BACKOFF_MILLIS;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return connectionPool.acquire();
+            } catch (SQLException e) {
+                if (attempt == MAX_ACQUIRE_ATTEMPTS) return null;
+                logger.warning("Не удалось получить соединение для отложенной записи, повтор через " + backoff + " мс: " + e.getMessage());
+            }
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+        }
+    }
+
+    /**
+     * Выполняет изменения по порядку, подряд идущие изменения одного вида отправляются одним пакетом
+     */
+    private static void execute(Connection connection, List<Mutation> batch) throws SQLException {
+        int from = 0;
+        while (from < batch.size()) {
+            String sql = batch.get(from).sql;
+            int to = from;
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                while (to < batch.size() && batch.get(to).sql.equals(sql)) {
+                    batch.get(to++).binder.bind(statement);
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+            from = to;
+        }
+    }
+
+    private void rollback(Connection connection) {
+        try {
+            connection.rollback();
+        } catch (SQLException e) {
+            logger.warning("Не удалось откатить транзакцию отложенной записи: " + e.getMessage());
+        }
+    }
+
+    private static void bindPerson(PreparedStatement statement, Person person, int from) throws SQLException {
+        statement.setFloat(from, person.getCoordinates().getX());
+        statement.setFloat(from + 1, person.getCoordinates().getY());
+        statement.setDouble(from + 2, person.getLocation().getX());
+        statement.setFloat(from + 3, person.getLocation().getY());
+        statement.setLong(from + 4, person.getLocation().getZ());
+        statement.setString(from + 5, person.getLocation().getName());
+    }
+
+    private static void setHeight(PreparedStatement statement, int index, Integer height) throws SQLException {
+        if (height == null) statement.setNull(index, Types.INTEGER);
+        else statement.setInt(index, height);
+    }
+
+    /**
+     * @return Строка с накопленными показателями отложенной записи
+     */
+    public String metrics() {
+        synchronized (lock) {
+            return String.format("в очереди %d, записано %d изменений за %d пакетов (в среднем %.1f), " +
+                            "не записано %d, задержка записи средняя %.2f мс, наибольшая %.2f мс",
+                    queue.size(), written, flushes, flushes == 0 ? 0 : (double) written / flushes, failed,
+                    written == 0 ? 0 : latencyNanos / 1e6 / written, maxLatencyNanos / 1e6);
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private interface Binder {
+        void bind(PreparedStatement statement) throws SQLException;
+    }
+
+    private static class Mutation {
+        private final String sql;
+        /**
+         * Отмена изменения в коллекции, если оно не записано в базу данных, выполняется под блокировкой очереди
+         */
+        private final Runnable undo;
+        private final Binder binder;
+        private final long submittedAt = System.nanoTime();
+        private long sequence;
+        private volatile boolean durable;
+
+        private Mutation(String sql, Runnable undo, Binder binder) {
+            this.sql = sql;
+            this.undo = undo;
+            this.binder = binder;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package server.net;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Класс пула прямых буферов одинакового размера, позволяет не выделять новый буфер
+ * под каждую датаграмму. Если свободных буферов нет, выделяется новый, лишние буферы
+ * при возврате в заполненный пул отбрасываются
+ */
+public class BufferPool {
+
+    private final int bufferSize;
+    private final BlockingQueue<ByteBuffer> buffers;
+    private final AtomicLong allocated = new AtomicLong();
+
+    public BufferPool(int bufferSize, int capacity) {
+        this.bufferSize = bufferSize;
+        this.buffers = new ArrayBlockingQueue<>(capacity);
+    }
+
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = buffers.poll();
+        if (buffer != null) return buffer;
+        allocated.incrementAndGet();
+        return ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    public void release(ByteBuffer buffer) {
+        if (buffer == null || buffer.capacity() != bufferSize) return;
+        buffer.clear();
+        buffers.offer(buffer);
+    }
+
+    public long getAllocated() {
+        return allocated.get();
+    }
+
+    public int getAvailable() {
+        return buffers.size();
+    }
+}
@@ -0,0 +1,118 @@
+package server.net;
+
+import java.net.SocketAddress;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Класс кэша результатов по ключу (адрес клиента, идентификатор запроса). Запрос отмечается
+ * как выполняемый до начала выполнения команды, поэтому повторно присланные клиентом
+ * датаграммы не выполняются второй раз: пока команда выполняется, дубликаты отбрасываются,
+ * после выполнения результат неидемпотентной команды отправляется из кэша. Записи вытесняются
+ * по истечении времени хранения или при превышении количества, начиная с самых старых
+ */
+public class IdempotencyCache {
+
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final Map<Key, Entry> entries = new LinkedHashMap<>();
+    private final AtomicLong hits = new AtomicLong(), misses = new AtomicLong();
+
+    public IdempotencyCache(int maxEntries, long ttlMillis) {
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * Отмечает запрос как выполняемый, если он еще не встречался
+     *
+     * @return null, если запрос новый и его нужно выполнить, иначе запись о ранее полученном запросе
+     */
+    public synchronized Entry begin(SocketAddress address, int requestId) {
+        evict();
+        Key key = new Key(address, requestId);
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            hits.incrementAndGet();
+            return entry;
+        }
+        misses.incrementAndGet();
+        entries.put(key, new Entry());
+        return null;
+    }
+
+    /**
+     * Сохраняет результат выполненного запроса для повторной отправки
+     */
+    public synchronized void complete(Reply reply) {
+        Entry entry = entries.get(new Key(reply.getAddress(), reply.getRequestId()));
+        if (entry != null) entry.reply = reply;
+    }
+
+    /**
+     * Забывает запрос, результат которого хранить не нужно, повторный запрос будет выполнен заново
+     */
+    public synchronized void forget(SocketAddress address, int requestId) {
+        entries.remove(new Key(address, requestId));
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private void evict() {
+        long now = System.currentTimeMillis();
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entries.size() < maxEntries && now - entry.createdAt <= ttlMillis) break;
+            iterator.remove();
+        }
+    }
+
+    public static class Entry {
+        private final long createdAt = System.currentTimeMillis();
+        private volatile Reply reply;
+
+        /**
+         * @return true, если команда еще выполняется и результата пока нет
+         */
+        public boolean isInProgress() {
+            return reply == null;
+        }
+
+        public Reply getReply() {
+            return reply;
+        }
+    }
+
+    private static class Key {
+        private final SocketAddress address;
+        private final int requestId;
+
+        private Key(SocketAddress address, int requestId) {
+            this.address = address;
+            this.requestId = requestId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return requestId == key.requestId && address.equals(key.address);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(address, requestId);
+        }
+    }
+}
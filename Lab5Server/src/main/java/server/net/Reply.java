@@ -0,0 +1,47 @@
+package server.net;
+
+import common.commandline.response.CommandResult;
+import common.net.protocol.WireFormat;
+
+import java.net.SocketAddress;
+
+/**
+ * Класс ответа сервера: результат выполнения команды, адрес клиента, идентификатор запроса,
+ * формат, в котором клиент прислал запрос, и принимает ли клиент сжатые результаты
+ */
+public class Reply {
+
+    private final int requestId;
+    private final CommandResult result;
+    private final SocketAddress address;
+    private final WireFormat format;
+    private final boolean acceptsDeflate;
+
+    public Reply(int requestId, CommandResult result, SocketAddress address, WireFormat format, boolean acceptsDeflate) {
+        this.requestId = requestId;
+        this.result = result;
+        this.address = address;
+        this.format = format;
+        this.acceptsDeflate = acceptsDeflate;
+    }
+
+    public int getRequestId() {
+        return requestId;
+    }
+
+    public CommandResult getResult() {
+        return result;
+    }
+
+    public SocketAddress getAddress() {
+        return address;
+    }
+
+    public WireFormat getFormat() {
+        return format;
+    }
+
+    public boolean acceptsDeflate() {
+        return acceptsDeflate;
+    }
+}
@@ -0,0 +1,26 @@
+package server.net;
+
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * Класс полученного от клиента запроса, хранит буфер с данными датаграммы из пула буферов и адрес отправителя
+ */
+public class Request {
+
+    private final ByteBuffer buffer;
+    private final SocketAddress address;
+
+    public Request(ByteBuffer buffer, SocketAddress address) {
+        this.buffer = buffer;
+        this.address = address;
+    }
+
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    public SocketAddress getAddress() {
+        return address;
+    }
+}
@@ -0,0 +1,113 @@
+package server.net;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.logging.Logger;
+
+/**
+ * Класс многопоточного конвейера обработки запросов, разделяет работу сервера на три стадии:
+ * получение датаграмм, выполнение команд пулом рабочих потоков и отправку результатов.
+ * Стадии связаны ограниченными очередями, при заполнении очереди предыдущая стадия
+ * блокируется до появления свободного места
+ *
+ * @see UDPServer
+ */
+public class RequestPipeline {
+
+    private final UDPServer server;
+    private final Logger logger;
+    private final int workers, queueCapacity;
+    private final BlockingQueue<Request> requests;
+    private final BlockingQueue<Reply> replies;
+    private final List<Thread> threads = new ArrayList<>();
+
+    public RequestPipeline(UDPServer server, int workers, int queueCapacity, Logger logger) {
+        this.server = server;
+        this.logger = logger;
+        this.workers = workers;
+        this.queueCapacity = queueCapacity;
+        this.requests = new ArrayBlockingQueue<>(queueCapacity);
+        this.replies = new ArrayBlockingQueue<>(queueCapacity);
+    }
+
+    public void start() {
+        threads.add(newStage("receiver", this::receiveLoop));
+        for (int i = 0; i < workers; i++)
+            threads.add(newStage("worker-" + i, this::executeLoop));
+        threads.add(newStage("sender", this::sendLoop));
+        threads.forEach(Thread::start);
+        logger.info(String.format("Конвейер запущен, рабочих потоков: %d, размер очередей: %d",
+                workers, queueCapacity));
+    }
+
+    public void stop() {
+        threads.forEach(Thread::interrupt);
+        threads.clear();
+    }
+
+    private Thread newStage(String name, Runnable loop) {
+        Thread thread = new Thread(() -> {
+            try {
+                loop.run();
+            } catch (StageInterruptedException e) {
+                logger.info(String.format("Поток %s остановлен", Thread.currentThread().getName()));
+            }
+        }, "pipeline-" + name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    private void receiveLoop() {
+        while (!Thread.currentThread().isInterrupted()) {
+            Request request = server.receiveRequest();
+            if (request == null) continue;
+            if (requests.remainingCapacity() == 0)
+                logger.warning("Очередь запросов заполнена, прием новых запросов приостановлен");
+            put(requests, request);
+        }
+    }
+
+    private void executeLoop() {
+        while (!Thread.currentThread().isInterrupted()) {
+            Request request = take(requests);
+            Reply reply;
+            try {
+                reply = server.process(request);
+            } catch (RuntimeException e) {
+                // Ошибка одного запроса не должна останавливать рабочий поток
+                e.printStackTrace();
+                logger.severe("Не удалось обработать запрос: " + e);
+                continue;
+            }
+            if (reply != null) put(replies, reply);
+        }
+    }
+
+    private void sendLoop() {
+        while (!Thread.currentThread().isInterrupted()) {
+            Reply reply = take(replies);
+            server.send(reply);
+        }
+    }
+
+    private static <T> void put(BlockingQueue<T> queue, T element) {
+        try {
+            queue.put(element);
+        } catch (InterruptedException e) {
+            throw new StageInterruptedException();
+        }
+    }
+
+    private static <T> T take(BlockingQueue<T> queue) {
+        try {
+            return queue.take();
+        } catch (InterruptedException e) {
+            throw new StageInterruptedException();
+        }
+    }
+
+    private static class StageInterruptedException extends RuntimeException {
+    }
+}
@@ -0,0 +1,88 @@
+package server.net;
+
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Класс хранилища недавно отправленных фрагментированных сообщений, используемого для повторной
+ * передачи потерянных фрагментов. Сообщения вытесняются по истечении времени хранения
+ * или при превышении суммарного объема, начиная с самых старых
+ */
+public class SentMessages {
+
+    private final long maxBytes;
+    private final long ttlMillis;
+    private final AtomicInteger nextId = new AtomicInteger();
+    private final Map<Integer, SentMessage> messages = new LinkedHashMap<>();
+    private long bytes;
+
+    public SentMessages(long maxBytes, long ttlMillis) {
+        this.maxBytes = maxBytes;
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * Сохраняет копию сообщения: переданный буфер может быть взят из пула и переиспользован после отправки
+     */
+    public synchronized SentMessage store(int requestId, ByteBuffer data, SocketAddress address) {
+        ByteBuffer copy = ByteBuffer.allocate(data.remaining()).put(data.duplicate());
+        copy.flip();
+        SentMessage message = new SentMessage(nextId.incrementAndGet(), requestId, copy.asReadOnlyBuffer(), address);
+        messages.put(message.id, message);
+        bytes += data.remaining();
+        evict();
+        return message;
+    }
+
+    /**
+     * @param id Идентификатор сообщения
+     * @param address Адрес, запрашивающий повторную передачу
+     * @return Сообщение или null, если оно уже вытеснено или было отправлено другому клиенту
+     */
+    public synchronized SentMessage get(int id, SocketAddress address) {
+        evict();
+        SentMessage message = messages.get(id);
+        return message != null && message.address.equals(address) ? message : null;
+    }
+
+    private void evict() {
+        long now = System.currentTimeMillis();
+        Iterator<SentMessage> iterator = messages.values().iterator();
+        while (iterator.hasNext()) {
+            SentMessage message = iterator.next();
+            if (bytes <= maxBytes && now - message.createdAt <= ttlMillis) break;
+            iterator.remove();
+            bytes -= message.data.remaining();
+        }
+    }
+
+    public static class SentMessage {
+        private final int id, requestId;
+        private final ByteBuffer data;
+        private final SocketAddress address;
+        private final long createdAt = System.currentTimeMillis();
+
+        private SentMessage(int id, int requestId, ByteBuffer data, SocketAddress address) {
+            this.id = id;
+            this.requestId = requestId;
+            this.data = data;
+            this.address = address;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public int getRequestId() {
+            return requestId;
+        }
+
+        public ByteBuffer getData() {
+            return data.duplicate();
+        }
+    }
+}
@@ -1,53 +1,179 @@
 package server.net;
 
 import common.collection.PeopleCollection;
+import common.collection.PersistentTreeSet;
 import common.commandline.Command;
 import common.commandline.CommandLineHandler;
 import common.commandline.PlaceHolder;
 import common.commandline.response.CommandResult;
 import common.commandline.response.DefaultResponse;
 import common.commandline.response.Response;
-import common.data.*;
+import common.commandline.response.SqlResponse;
+import common.data.Person;
 import common.net.ConnectionProperties;
-import common.util.UtilFunctions;
+import common.net.protocol.*;
+import common.session.Session;
+import common.session.SessionTable;
+import common.store.PeopleStore;
+import common.store.StoreException;
+import common.store.WriteBehind;
 import server.commandline.CommandLineHandlerServer;
+import server.db.CollectionSnapshot;
+import server.db.ConnectionPool;
+import server.db.Dimensions;
+import server.db.JdbcPeopleStore;
+import server.db.PeopleLoader;
+import server.db.WriteBehindQueue;
+import server.store.LogPeopleStore;
+import server.net.SentMessages.SentMessage;
 
 import java.io.*;
 import java.net.*;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.file.Paths;
 import java.sql.*;
-import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.logging.Logger;
+import java.util.zip.Deflater;
 
 import static common.commandline.pdcommands.PeopleDatabaseCommands.peopleCollection;
 
 public class UDPServer {
 
     private final int port;
-    private DatagramSocket socket;
+    private DatagramChannel channel;
+    private Selector readSelector, writeSelector;
     private final Logger logger;
-    private final static int BUFFER_SIZE = 65_535;
-    private static Connection db_connection;
+    private final static int BUFFER_SIZE = 65_535,
+            DROP_REPORT_INTERVAL_S = 10,
+            POOL_REPORT_INTERVAL_S = 60,
+            SENT_MESSAGE_TTL_S = 60,
+            IDEMPOTENCY_TTL_S = 120,
+            SESSION_TTL_S = 30 * 60;
+    private final BufferPool bufferPool = new BufferPool(BUFFER_SIZE, ConnectionProperties.getBufferPoolSize());
+    private final int fragmentSize = Math.min(ConnectionProperties.getFragmentSize(), Protocol.MAX_DATAGRAM_SIZE - Fragment.HEADER_SIZE);
+    private final SentMessages sentMessages = new SentMessages(ConnectionProperties.getRetransmitBufferSize(),
+            TimeUnit.SECONDS.toMillis(SENT_MESSAGE_TTL_S));
+    private final IdempotencyCache idempotencyCache = new IdempotencyCache(ConnectionProperties.getIdempotencyCacheSize(),
+            TimeUnit.SECONDS.toMillis(IDEMPOTENCY_TTL_S));
+    private final SessionTable sessions = new SessionTable(TimeUnit.SECONDS.toMillis(SESSION_TTL_S));
+    private final int compressionThreshold = ConnectionProperties.getCompressionThreshold();
+    private final ThreadLocal<Deflater> deflaters = ThreadLocal.withInitial(Deflater::new);
+    private UdpDropMonitor dropMonitor;
+    private ScheduledExecutorService monitorExecutor;
+    private ConnectionPool connectionPool;
+    private WriteBehindQueue writeBehind;
+    private Dimensions dimensions;
+    private PeopleStore store;
+    private LogPeopleStore logStore;
+    private final CollectionSnapshot snapshot;
+    /**
+     * Команды, работающие с хранилищем, выполняются под блокировкой чтения, а снимок коллекции
+     * берется под блокировкой записи, чтобы отметка базы данных и коллекция соответствовали друг другу
+     */
+    private final ReadWriteLock snapshotLock = new ReentrantReadWriteLock();
+    private volatile PersistentTreeSet<Person> savedPeople;
+    private boolean disconnected;
 
     public UDPServer(int port, Logger logger) {
         this.port = port;
         this.logger = logger;
+        this.snapshot = new CollectionSnapshot(Paths.get(ConnectionProperties.getSnapshotFile()), logger);
     }
 
     public void connect() {
         logger.info("Подключаемся...");
         do {
             try {
-                socket = new DatagramSocket(port);
+                openChannel();
                 logger.info("Подключение установлено");
             } catch (SocketException e) {
                 e.printStackTrace();
                 logger.severe("Не удалось установить соединение, порт занят");
+            } catch (IOException e) {
+                e.printStackTrace();
+                logger.severe("Не удалось открыть канал, неполадки в соединении");
+                System.exit(-1);
             }
-        } while (socket == null);
+        } while (channel == null);
+        startDropMonitor();
+        if (ConnectionProperties.isLogStore()) {
+            openLogStore();
+            return;
+        }
         logger.info("Подключаемся к базе данных...");
         checkDriver();
         DriverManager.setLoginTimeout(5);
         connectDatabase();
+        loadDimensions();
+        store = new JdbcPeopleStore(connectionPool, dimensions);
+        if (ConnectionProperties.isWriteBehindEnabled()) {
+            writeBehind = new WriteBehindQueue(connectionPool, dimensions, logger);
+            writeBehind.start();
+            logger.info("Включена отложенная запись изменений коллекции");
+        }
+        monitorExecutor.scheduleAtFixedRate(() -> {
+            logger.info("Пул соединений с базой данных: " + connectionPool.metrics());
+            if (writeBehind != null) logger.info("Отложенная запись: " + writeBehind.metrics());
+        }, POOL_REPORT_INTERVAL_S, POOL_REPORT_INTERVAL_S, TimeUnit.SECONDS);
+        int snapshotInterval = ConnectionProperties.getSnapshotInterval();
+        monitorExecutor.scheduleWithFixedDelay(this::saveSnapshot, snapshotInterval, snapshotInterval, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Открывает хранилище в журнале на диске сервера, база данных, снимок коллекции и отложенная запись не используются
+     */
+    private void openLogStore() {
+        logger.info("Открываем журнал хранилища...");
+        logStore = new LogPeopleStore(logger);
+        try {
+            logStore.open();
+        } catch (StoreException e) {
+            e.printStackTrace();
+            logger.severe("Не удалось восстановить хранилище из журнала: " + e.getMessage());
+            System.exit(-1);
+        }
+        store = logStore;
+        monitorExecutor.scheduleAtFixedRate(() -> logger.info("Журнал хранилища: " + logStore.metrics()),
+                POOL_REPORT_INTERVAL_S, POOL_REPORT_INTERVAL_S, TimeUnit.SECONDS);
+    }
+
+    private void openChannel() throws IOException {
+        DatagramChannel channel = DatagramChannel.open();
+        try {
+            channel.setOption(StandardSocketOptions.SO_RCVBUF, ConnectionProperties.getReceiveBufferSize());
+            channel.setOption(StandardSocketOptions.SO_SNDBUF, ConnectionProperties.getSendBufferSize());
+            channel.bind(new InetSocketAddress(port));
+            channel.configureBlocking(false);
+            readSelector = Selector.open();
+            writeSelector = Selector.open();
+            channel.register(readSelector, SelectionKey.OP_READ);
+            channel.register(writeSelector, SelectionKey.OP_WRITE);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        this.channel = channel;
+        logger.info(String.format("Размеры буферов сокета: прием %d байт, отправка %d байт",
+                channel.getOption(StandardSocketOptions.SO_RCVBUF), channel.getOption(StandardSocketOptions.SO_SNDBUF)));
+    }
+
+    private void startDropMonitor() {
+        dropMonitor = new UdpDropMonitor(port, logger);
+        monitorExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "udp-drop-monitor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        monitorExecutor.scheduleAtFixedRate(dropMonitor, 0, DROP_REPORT_INTERVAL_S, TimeUnit.SECONDS);
     }
 
     private void checkDriver() {
@@ -66,9 +192,10 @@ public class UDPServer {
         do {
             String user = cmd.awaitInput("Введите логин:");
             String password = cmd.awaitPassword("Введите пароль:");
+            ConnectionPool pool = new ConnectionPool(url, user, password, logger);
             try {
-                db_connection = DriverManager.getConnection(url, user, password);
-                db_connection.setAutoCommit(false);
+                pool.start();
+                connectionPool = pool;
             } catch (SQLTimeoutException e) {
                 e.printStackTrace();
                 logger.severe("Не удалось установить соединение с базой данных, превышено время ожидания");
@@ -77,7 +204,22 @@ public class UDPServer {
                 e.printStackTrace();
                 handleSqlException(e);
             }
-        } while (db_connection == null);
+        } while (connectionPool == null);
+    }
+
+    private void loadDimensions() {
+        try {
+            Connection connection = connectionPool.acquire();
+            try {
+                dimensions = Dimensions.load(connection);
+            } finally {
+                connectionPool.release(connection);
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            logger.severe("Не удалось получить справочники цветов и стран из базы данных");
+            System.exit(-1);
+        }
     }
 
     private void handleSqlException(SQLException e) {
@@ -102,62 +244,301 @@ public class UDPServer {
         }
     }
 
-    public void disconnect() {
+    /**
+     * Закрывает очередь отложенной записи, пул соединений, хранилище и канал, повторный вызов ничего не делает
+     */
+    public synchronized void disconnect() {
+        if (disconnected) return;
+        disconnected = true;
         logger.info("Разрываем соединение...");
-        socket.close();
+        if (monitorExecutor != null) monitorExecutor.shutdownNow();
+        if (writeBehind != null) writeBehind.close();
+        if (connectionPool != null) connectionPool.close();
+        if (logStore != null) logStore.close();
+        logger.info(String.format("Кэш повторных запросов: попаданий %d, промахов %d",
+                idempotencyCache.getHits(), idempotencyCache.getMisses()));
+        try {
+            readSelector.close();
+            writeSelector.close();
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+            logger.severe("Не удалось корректно закрыть канал");
+        }
         logger.info("Соединение разорвано");
     }
 
-    public void send(CommandResult result, InetAddress address, int port) {
-        byte[] buffer;
-        try (ByteArrayOutputStream byteOutputStream = new ByteArrayOutputStream()) {
-            ObjectOutputStream objectOutputStream = new ObjectOutputStream(byteOutputStream);
-            objectOutputStream.writeObject(result);
-            buffer = byteOutputStream.toByteArray();
-            DatagramPacket request = new DatagramPacket(buffer, buffer.length, address, port);
-            socket.send(request);
-        } catch (SocketTimeoutException e) {
-            e.printStackTrace();
-            logger.severe("Не удалось отправить данные клиенту, клиент не отвечает");
-            return;
+    public void send(Reply reply) {
+        ByteBuffer buffer = bufferPool.acquire();
+        try {
+            ByteBuffer encoded = encodeResult(reply, buffer);
+            if (encoded.remaining() <= fragmentSize) {
+                sendBuffer(encoded, reply.getAddress());
+            } else {
+                SentMessage message = sentMessages.store(reply.getRequestId(), encoded, reply.getAddress());
+                int total = Fragment.count(encoded.remaining(), fragmentSize);
+                logger.info(String.format("Результат размером %d байт разбит на %d фрагментов", encoded.remaining(), total));
+                for (int seq = 0; seq < total; seq++)
+                    sendFragment(message, seq, reply.getAddress());
+            }
         } catch (IOException e) {
             e.printStackTrace();
             logger.severe("Не удалось отправить данные клиенту, неполадки в соединении");
             return;
+        } finally {
+            bufferPool.release(buffer);
         }
         logger.info("Результат отправлен клиенту");
     }
 
+    /**
+     * Кодирует результат в буфер из пула, если результат в него не помещается,
+     * кодирует его повторно в растущий буфер в куче. Результат больше порога сжатия
+     * сжимается, если клиент согласовал сжатие
+     *
+     * @return Буфер, готовый к чтению закодированного результата
+     */
+    private ByteBuffer encodeResult(Reply reply, ByteBuffer buffer) throws IOException {
+        try {
+            Envelope.writeResult(new BinaryWriter(buffer), reply.getRequestId(), reply.getResult(), reply.getFormat());
+        } catch (BufferOverflowException e) {
+            BinaryWriter writer = BinaryWriter.growable(BUFFER_SIZE * 4);
+            Envelope.writeResult(writer, reply.getRequestId(), reply.getResult(), reply.getFormat());
+            buffer = writer.getBuffer();
+        }
+        buffer.flip();
+        if (!reply.acceptsDeflate() || buffer.remaining() < compressionThreshold) return buffer;
+        ByteBuffer deflated = Envelope.deflateResult(buffer, deflaters.get());
+        if (deflated == null) return buffer;
+        logger.info(String.format("Результат сжат с %d до %d байт", buffer.remaining(), deflated.remaining()));
+        return deflated;
+    }
+
+    private void sendFragment(SentMessage message, int seq, SocketAddress address) throws IOException {
+        ByteBuffer buffer = bufferPool.acquire();
+        try {
+            Fragment.write(new BinaryWriter(buffer), message.getRequestId(), message.getId(), message.getData(), seq, fragmentSize);
+            buffer.flip();
+            sendBuffer(buffer, address);
+        } finally {
+            bufferPool.release(buffer);
+        }
+    }
+
+    private void retransmit(Nack nack, SocketAddress address) {
+        SentMessage message = sentMessages.get(nack.getMessageId(), address);
+        if (message == null) {
+            logger.warning(String.format("Сообщение %d для повторной передачи не найдено, оно устарело", nack.getMessageId()));
+            return;
+        }
+        int total = Fragment.count(message.getData().remaining(), fragmentSize);
+        logger.info(String.format("Повторная передача %d фрагментов сообщения %d", nack.getSeqs().length, message.getId()));
+        try {
+            for (int seq : nack.getSeqs())
+                if (seq >= 0 && seq < total) sendFragment(message, seq, address);
+        } catch (IOException e) {
+            e.printStackTrace();
+            logger.severe("Не удалось повторно отправить фрагменты клиенту, неполадки в соединении");
+        }
+    }
+
+    private void sendBuffer(ByteBuffer buffer, SocketAddress address) throws IOException {
+        synchronized (writeSelector) {
+            while (channel.send(buffer, address) == 0) {
+                // Буфер отправки сокета заполнен, ждем освобождения места
+                writeSelector.select();
+                writeSelector.selectedKeys().clear();
+            }
+        }
+    }
+
     public void receive() {
+        Request request = receiveRequest();
+        if (request == null) return;
+        Reply reply = process(request);
+        if (reply != null) send(reply);
+    }
+
+    public Request receiveRequest() {
         logger.info("Ожидаем отправки данных от клиента...");
-        byte[] buffer = new byte[BUFFER_SIZE];
-        DatagramPacket request = new DatagramPacket(buffer, buffer.length);
+        ByteBuffer buffer = bufferPool.acquire();
+        SocketAddress address;
+        try {
+            while ((address = channel.receive(buffer)) == null) {
+                readSelector.select();
+                readSelector.selectedKeys().clear();
+            }
+        } catch (IOException e) {
+            bufferPool.release(buffer);
+            e.printStackTrace();
+            logger.severe("Не удалось получить данные от клиента, неполадки в соединении");
+            return null;
+        }
+        buffer.flip();
+        logger.info("Данные получены");
+        return new Request(buffer, address);
+    }
+
+    /**
+     * Декодирует и выполняет полученный запрос
+     *
+     * @param request Полученный запрос, буфер запроса возвращается в пул
+     * @return Ответ для отправки клиенту или null, если ответ не требуется
+     */
+    public Reply process(Request request) {
+        ByteBuffer buffer = request.getBuffer();
+        int requestId = Envelope.peekRequestId(buffer);
+        WireFormat format = WireFormat.BINARY;
+        boolean acceptsDeflate = false;
         CommandResult result;
-        try (ByteArrayInputStream byteInputStream = new ByteArrayInputStream(buffer)) {
-            socket.receive(request);
-            logger.info("Данные получены, десериализуем...");
-            ObjectInputStream objectInputStream = new ObjectInputStream(byteInputStream);
-            Command command = (Command) objectInputStream.readObject();
-            Object[] args = (Object[]) objectInputStream.readObject();
-            objectInputStream.close();
-            args = PlaceHolder.replacePlaceHoldersWith(args, peopleCollection, db_connection);
-            logger.info(String.format("Выполняется команда %s", command.getAlias()));
-            result = command.execute(args);
+        Reply reply;
+        try {
+            int type = Protocol.frameType(buffer);
+            if (type == Protocol.TYPE_NACK) {
+                retransmit(Nack.read(buffer), request.getAddress());
+                return null;
+            }
+            if (type == Protocol.TYPE_HELLO) {
+                hello(Hello.read(buffer), request.getAddress());
+                return null;
+            }
+            IdempotencyCache.Entry entry = idempotencyCache.begin(request.getAddress(), requestId);
+            if (entry != null) return replay(entry, requestId);
+            logger.info("Декодируем полученные данные...");
+            RequestMessage message = Envelope.readRequest(buffer);
+            format = message.getFormat();
+            acceptsDeflate = message.acceptsDeflate();
+            result = execute(message.getCommand(), message.getArgs(), message.getSessionToken(), message.isEarlyAck());
+            reply = new Reply(requestId, result, request.getAddress(), format, acceptsDeflate);
+            if (message.getCommand().isIdempotent())
+                idempotencyCache.forget(request.getAddress(), requestId);
+            else
+                idempotencyCache.complete(reply);
+        } catch (ProtocolException e) {
+            result = onReceiveException("Не удалось разобрать полученные данные: " + e.getMessage(),
+                    DefaultResponse.SERVER_ERROR);
+            reply = null;
         } catch (IOException e) {
             e.printStackTrace();
             result = onReceiveException("Не удалось преобразовать полученные данные, данные были повреждены во время передачи",
                     DefaultResponse.SERVER_ERROR);
+            reply = null;
         } catch (ClassNotFoundException e) {
             e.printStackTrace();
             result = onReceiveException("Не удалось преобразовать полученные данные, классов полученных объектов не существует",
                     DefaultResponse.CLASS_NOT_FOUND);
+            reply = null;
         } catch (ClassCastException e) {
             e.printStackTrace();
             result = onReceiveException("Не удалось преобразовать полученные данные, ожидались объекты другого типа",
                     DefaultResponse.TYPE_ERROR);
+            reply = null;
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            result = onReceiveException("Ошибка при выполнении запроса: " + e,
+                    DefaultResponse.SERVER_ERROR);
+            reply = null;
+        } finally {
+            bufferPool.release(buffer);
+        }
+        if (reply == null) {
+            // Запрос не удалось разобрать, повторная датаграмма может дойти целой
+            idempotencyCache.forget(request.getAddress(), requestId);
+            reply = new Reply(requestId, result, request.getAddress(), format, acceptsDeflate);
         }
         logger.info(String.format("Команда выполнена с результатом %s, сохраняем и отправляем результат клиенту...", result.getResponse().toString()));
-        send(result, request.getAddress(), request.getPort());
+        return reply;
+    }
+
+    /**
+     * Обрабатывает повторно присланный клиентом запрос без повторного выполнения команды
+     *
+     * @return Сохраненный ответ или null, если команда еще выполняется
+     */
+    private Reply replay(IdempotencyCache.Entry entry, int requestId) {
+        if (entry.isInProgress()) {
+            logger.info(String.format("Запрос %d уже выполняется, повторная датаграмма отброшена", requestId));
+            return null;
+        }
+        logger.info(String.format("Запрос %d уже выполнен, отправляем сохраненный результат (попаданий %d, промахов %d)",
+                requestId, idempotencyCache.getHits(), idempotencyCache.getMisses()));
+        return entry.getReply();
+    }
+
+    private void hello(Hello hello, SocketAddress address) {
+        int supported = ConnectionProperties.isCompressionEnabled() ? Hello.SUPPORTED : 0;
+        Hello answer = new Hello(hello.getRequestId(), hello.getCapabilities() & supported);
+        logger.info(String.format("Согласованы возможности протокола %d", answer.getCapabilities()));
+        ByteBuffer buffer = bufferPool.acquire();
+        try {
+            answer.write(new BinaryWriter(buffer));
+            buffer.flip();
+            sendBuffer(buffer, address);
+        } catch (IOException e) {
+            e.printStackTrace();
+            logger.severe("Не удалось отправить ответ на согласование возможностей, неполадки в соединении");
+        } finally {
+            bufferPool.release(buffer);
+        }
+    }
+
+    /**
+     * @param earlyAck Клиент согласен получить ответ на изменение до его записи в базу данных
+     */
+    private CommandResult execute(Command command, Object[] args, long sessionToken, boolean earlyAck) {
+        Session session = sessions.get(sessionToken);
+        boolean writesBehind = writeBehind != null && PlaceHolder.isUnresolved(args, WriteBehind.class);
+        boolean needsStore = PlaceHolder.isUnresolved(args, PeopleStore.class);
+        boolean bypassesQueue = writeBehind != null && !writesBehind && needsStore
+                && PlaceHolder.isUnresolved(args, PeopleCollection.class);
+        args = PlaceHolder.replacePlaceHoldersWith(args, peopleCollection, sessions, session, writeBehind, store);
+        if (PlaceHolder.isUnresolved(args, Session.class)) {
+            logger.warning(String.format("Команда %s отклонена, сессия клиента недействительна", command.getAlias()));
+            Response response = DefaultResponse.UNAUTHORIZED;
+            return new CommandResult(response.getMsg(), response);
+        }
+        logger.info(String.format("Выполняется команда %s", command.getAlias()));
+        if (writesBehind) return executeBehind(command, args, earlyAck);
+        if (bypassesQueue) {
+            // Люди, сохраняемые в хранилище мимо очереди, не должны попасть в базу данных раньше изменений из очереди
+            try {
+                writeBehind.flush();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return onReceiveException("Ожидание записи очереди прервано", SqlResponse.UNKNOWN);
+            }
+        }
+        if (!needsStore)
+            return command.execute(args);
+        snapshotLock.readLock().lock();
+        try {
+            return command.execute(args);
+        } finally {
+            snapshotLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Выполняет изменение через очередь отложенной записи без соединения с базой данных.
+     * Если клиент не согласен на ранний ответ, ответ отправляется после записи изменения
+     */
+    private CommandResult executeBehind(Command command, Object[] args, boolean earlyAck) {
+        CommandResult result;
+        writeBehind.forgetSubmitted();
+        snapshotLock.readLock().lock();
+        try {
+            result = command.execute(args);
+        } finally {
+            snapshotLock.readLock().unlock();
+        }
+        if (earlyAck) return result;
+        try {
+            if (writeBehind.awaitDurable()) return result;
+            return new CommandResult("Изменение не записано в базу данных и отменено", SqlResponse.UNKNOWN);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return new CommandResult("Изменение применено к коллекции, но его запись в базу данных не подтверждена", SqlResponse.UNKNOWN);
     }
 
     private CommandResult onReceiveException(String msg, Response response) {
@@ -165,34 +546,72 @@ public class UDPServer {
         return new CommandResult(response.getMsg(), response);
     }
 
+    /**
+     * Загружает коллекцию из журнала хранилища, если оно выбрано, иначе из снимка, если он соответствует
+     * базе данных, иначе из самой базы данных
+     */
     public PeopleCollection loadFromDatabase() throws SQLException {
-        PeopleCollection peopleCollection = new PeopleCollection();
+        if (logStore != null) {
+            PeopleCollection loaded = logStore.load();
+            savedPeople = loaded.getCollection();
+            return loaded;
+        }
+        CollectionSnapshot.Mark mark;
+        Connection connection = connectionPool.acquire();
+        try {
+            mark = CollectionSnapshot.Mark.read(connection);
+        } finally {
+            connectionPool.release(connection);
+        }
+        PeopleCollection loaded = snapshot.load(mark);
+        if (loaded != null) {
+            savedPeople = loaded.getCollection();
+            return loaded;
+        }
+        // Снимок отсутствует или устарел, savedPeople не задается, чтобы первая же запись снимка создала его
         logger.info("Получаем коллекцию из базы данных...");
-        PreparedStatement statement = db_connection.prepareStatement(
-                    "SELECT people.id, people.name, coordinates.x, coordinates.y, height, passport, " +
-                        "colors.name, countries.name, locations.x, locations.y, locations.z, locations.name, login FROM people " +
-                        "JOIN coordinates ON coordinates.id = coordinates_id " +
-                        "JOIN locations ON locations.id = location_id " +
-                        "JOIN colors ON colors.id = color_id " +
-                        "JOIN countries ON countries.id = country_id " +
-                        "JOIN users ON users.id = owner_id;"
-        );
-        ResultSet result = statement.executeQuery();
-        while (result.next()) {
-            long id = result.getLong(1);
-            String name = result.getString(2);
-            Coordinates coordinates = new Coordinates(result.getFloat(3), result.getFloat(4));
-            Integer height = result.getInt(5);
-            String passport = result.getString(6);
-            Color color = UtilFunctions.enumOrNull(result.getString(7).toUpperCase(Locale.ROOT), Color.class);
-            Country country = UtilFunctions.enumOrNull(result.getString(8).toUpperCase(Locale.ROOT), Country.class);
-            Location location = new Location(result.getDouble(9), result.getFloat(10), result.getLong(11), result.getString(12));
-            String owner = result.getString(13);
-            Person person = new Person(id, name, coordinates, height, passport, color, country, location, owner);
-            peopleCollection.getCollection().add(person);
-            logger.info("Добавлен человек " + person);
-        }
-        logger.info("Коллекция успешно получена");
-        return peopleCollection;
+        return new PeopleLoader(connectionPool, dimensions, logger).load();
+    }
+
+    /**
+     * Записывает снимок коллекции, если она изменилась после предыдущей записи
+     */
+    public synchronized void saveSnapshot() {
+        if (peopleCollection == null || connectionPool == null) return;
+        PersistentTreeSet<Person> people;
+        CollectionSnapshot.Mark mark;
+        if (peopleCollection.getCollection() == savedPeople) return;
+        Connection connection = null;
+        try {
+            // Очередь записывается до блокировки, так как потоку записи нужно соединение из пула
+            if (writeBehind != null) writeBehind.flush();
+            // Соединение берется до блокировки, команды под блокировкой чтения уже держат свои соединения
+            connection = connectionPool.acquire();
+            snapshotLock.writeLock().lock();
+            try {
+                if (writeBehind != null && writeBehind.pending() > 0) {
+                    logger.info("Снимок коллекции отложен, в очереди отложенной записи остались изменения");
+                    return;
+                }
+                people = peopleCollection.getCollection();
+                mark = CollectionSnapshot.Mark.read(connection);
+            } finally {
+                snapshotLock.writeLock().unlock();
+            }
+        } catch (SQLException e) {
+            logger.warning("Не удалось получить отметку базы данных для снимка коллекции: " + e.getMessage());
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } finally {
+            if (connection != null) connectionPool.release(connection);
+        }
+        try {
+            snapshot.save(people, people.size(), mark);
+            savedPeople = people;
+        } catch (IOException e) {
+            logger.warning("Не удалось записать снимок коллекции: " + e.getMessage());
+        }
     }
 }
@@ -0,0 +1,65 @@
+package server.net;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Locale;
+import java.util.logging.Logger;
+
+/**
+ * Класс, отслеживающий количество датаграмм, отброшенных ядром из-за переполнения
+ * буфера приема сокета. Читает столбцы rx_queue и drops из /proc/net/udp и /proc/net/udp6,
+ * поэтому работает только в Linux, на остальных системах отключается при первой проверке
+ */
+public class UdpDropMonitor implements Runnable {
+
+    private static final Path[] SOURCES = {Paths.get("/proc/net/udp"), Paths.get("/proc/net/udp6")};
+
+    private final String portHex;
+    private final Logger logger;
+    private long lastDrops = -1;
+    private boolean supported = true;
+
+    public UdpDropMonitor(int port, Logger logger) {
+        this.portHex = String.format(":%04X", port);
+        this.logger = logger;
+    }
+
+    @Override
+    public void run() {
+        if (!supported) return;
+        long drops = 0, queued = 0;
+        boolean found = false;
+        try {
+            for (Path source : SOURCES) {
+                if (!Files.isReadable(source)) continue;
+                List<String> lines = Files.readAllLines(source, StandardCharsets.US_ASCII);
+                for (String line : lines.subList(1, lines.size())) {
+                    String[] columns = line.trim().split("\\s+");
+                    if (columns.length < 13 || !columns[1].toUpperCase(Locale.ROOT).endsWith(portHex)) continue;
+                    found = true;
+                    queued += Long.parseLong(columns[4].substring(columns[4].indexOf(':') + 1), 16);
+                    drops += Long.parseLong(columns[columns.length - 1]);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            found = false;
+        }
+        if (!found) {
+            supported = false;
+            logger.info("Статистика отброшенных ядром датаграмм недоступна на этой системе");
+            return;
+        }
+        if (lastDrops >= 0 && drops > lastDrops)
+            logger.warning(String.format("Ядро отбросило %d датаграмм (всего %d), в буфере приема %d байт, " +
+                    "увеличьте receive_buffer_size или число рабочих потоков", drops - lastDrops, drops, queued));
+        lastDrops = drops;
+    }
+
+    public long getDrops() {
+        return Math.max(lastDrops, 0);
+    }
+}
@@ -0,0 +1,515 @@
+package server.store;
+
+import common.collection.PeopleCollection;
+import common.data.Person;
+import common.net.ConnectionProperties;
+import common.net.protocol.BinaryReader;
+import common.net.protocol.BinaryWriter;
+import common.net.protocol.DataCodec;
+import common.session.Session;
+import common.session.SessionTable;
+import common.store.PeopleStore;
+import common.store.StoreException;
+
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Встроенное хранилище людей в журнале на диске сервера, не требующее базы данных.
+ * Каждое изменение дописывается записью в конец текущего сегмента журнала, текущее состояние хранится в памяти.
+ * Запись: длина, CRC32, тип и данные записи, люди кодируются {@link DataCodec#writePerson}.
+ * Изменение подтверждается после fsync сегмента, причем один fsync подтверждает все записи, дописанные
+ * к его началу, поэтому одновременные изменения делят одну синхронизацию с диском.
+ * Сегмент, превысивший store_segment_size, закрывается, и записи продолжаются в новом.
+ * Закрытые сегменты периодически сжимаются в один сегмент с текущим состоянием, который начинается записью RESET,
+ * поэтому при сбое во время сжатия журнал остается корректным.
+ * При запуске сегменты проигрываются по порядку, оборванная при сбое запись в конце последнего сегмента отрезается
+ */
+public class LogPeopleStore implements PeopleStore, AutoCloseable {
+
+    private static final byte USER = 1, PUT = 2, DELETE = 3, DELETE_OWNER = 4, RESET = 5;
+    private static final int HEADER_SIZE = 9, MAX_RECORD_SIZE = 16 * 1024 * 1024;
+    private static final String SEGMENT_PREFIX = "segment-", SEGMENT_SUFFIX = ".log", TEMP_SUFFIX = ".tmp";
+
+    private final Path dir = Paths.get(ConnectionProperties.getStoreDir());
+    private final int segmentSize = ConnectionProperties.getStoreSegmentSize();
+    private final Logger logger;
+    private final Object syncLock = new Object();
+
+    private final Map<String, User> users = new HashMap<>();
+    private final Map<Long, Person> people = new HashMap<>();
+    private long nextUserId = 1, nextPersonId = 1;
+
+    private FileChannel segment;
+    private int segmentNumber;
+    /**
+     * Номера записей: дописанных в журнал, записанных на диск и вошедших в последнее сжатие
+     */
+    private long appended, synced, compacted;
+    private long syncs;
+    private ScheduledExecutorService compactor;
+
+    private static class User {
+        private final long id;
+        private final String login, password;
+        private final boolean admin;
+
+        private User(long id, String login, String password, boolean admin) {
+            this.id = id;
+            this.login = login;
+            this.password = password;
+            this.admin = admin;
+        }
+    }
+
+    public LogPeopleStore(Logger logger) {
+        this.logger = logger;
+    }
+
+    /**
+     * Восстанавливает состояние из журнала и запускает периодическое сжатие
+     */
+    public void open() throws StoreException {
+        long start = System.nanoTime();
+        try {
+            Files.createDirectories(dir);
+            TreeMap<Integer, Path> segments = new TreeMap<>();
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+                for (Path file : files) {
+                    String name = file.getFileName().toString();
+                    if (name.endsWith(TEMP_SUFFIX)) {
+                        // Сжатие было прервано, его сегменты остались на месте
+                        Files.delete(file);
+                    } else if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                        segments.put(Integer.parseInt(name.substring(SEGMENT_PREFIX.length(),
+                                name.length() - SEGMENT_SUFFIX.length())), file);
+                    }
+                }
+            }
+            long records = 0;
+            for (Map.Entry<Integer, Path> entry : segments.entrySet())
+                records += replay(entry.getValue(), entry.getKey().equals(segments.lastKey()));
+            segmentNumber = segments.isEmpty() ? 1 : segments.lastKey();
+            segment = FileChannel.open(segmentPath(segmentNumber), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            segment.position(segment.size());
+            forceDirectory();
+            logger.info(String.format("Журнал хранилища восстановлен за %d мс: сегментов %d, записей %d, пользователей %d, людей %d",
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), segments.size(), records,
+                    users.size(), people.size()));
+        } catch (IOException | NumberFormatException e) {
+            throw new StoreException("Не удалось прочитать журнал хранилища: " + e.getMessage(), e);
+        }
+        int interval = ConnectionProperties.getStoreCompactionInterval();
+        compactor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "log-store-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        compactor.scheduleWithFixedDelay(this::compact, interval, interval, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Проигрывает записи сегмента
+     *
+     * @param last Последний сегмент, оборванная запись в его конце отрезается
+     * @return Количество проигранных записей
+     */
+    private long replay(Path file, boolean last) throws IOException, StoreException {
+        long records = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) throw new StoreException("Сегмент журнала " + file + " слишком велик");
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) ;
+            buffer.flip();
+            CRC32 crc = new CRC32();
+            while (buffer.hasRemaining()) {
+                int start = buffer.position();
+                int length = buffer.remaining() >= HEADER_SIZE ? buffer.getInt() : -1;
+                if (length < 1 || length > MAX_RECORD_SIZE || length + 4 > buffer.remaining()) {
+                    truncate(channel, file, start, last);
+                    break;
+                }
+                int checksum = buffer.getInt();
+                crc.reset();
+                crc.update(buffer.array(), buffer.position(), length);
+                if ((int) crc.getValue() != checksum) {
+                    truncate(channel, file, start, last);
+                    break;
+                }
+                ByteBuffer record = buffer.slice();
+                record.limit(length);
+                buffer.position(buffer.position() + length);
+                try {
+                    apply(new BinaryReader(record));
+                } catch (ProtocolException e) {
+                    throw new StoreException(String.format("Запись журнала %s со смещением %d повреждена: %s",
+                            file, start, e.getMessage()), e);
+                }
+                records++;
+            }
+        }
+        return records;
+    }
+
+    private void truncate(FileChannel channel, Path file, long position, boolean last) throws IOException, StoreException {
+        if (!last) throw new StoreException(String.format("Сегмент журнала %s поврежден со смещения %d", file, position));
+        logger.warning(String.format("Сегмент журнала %s оборван на смещении %d, отрезано %d байт",
+                file, position, channel.size() - position));
+        channel.truncate(position);
+        channel.force(true);
+    }
+
+    /**
+     * Применяет запись журнала к состоянию в памяти
+     */
+    private void apply(BinaryReader in) throws ProtocolException {
+        int type = in.readByte();
+        switch (type) {
+            case USER: {
+                User user = new User(in.readLong(), in.readString(), in.readString(), in.readBoolean());
+                users.put(user.login, user);
+                nextUserId = Math.max(nextUserId, user.id + 1);
+                break;
+            }
+            case PUT: {
+                Person person = DataCodec.readPerson(in);
+                people.put(person.getId(), person);
+                nextPersonId = Math.max(nextPersonId, person.getId() + 1);
+                break;
+            }
+            case DELETE:
+                people.remove(in.readLong());
+                break;
+            case DELETE_OWNER: {
+                String owner = in.readString();
+                people.values().removeIf(person -> owner.equals(person.getOwner()));
+                break;
+            }
+            case RESET:
+                users.clear();
+                people.clear();
+                nextUserId = in.readLong();
+                nextPersonId = in.readLong();
+                break;
+            default:
+                throw new ProtocolException("Неизвестный тип записи " + type);
+        }
+    }
+
+    /**
+     * @return Коллекция людей из состояния хранилища
+     */
+    public synchronized PeopleCollection load() {
+        PeopleCollection peopleCollection = new PeopleCollection();
+        peopleCollection.addAll(new ArrayList<>(people.values()));
+        return peopleCollection;
+    }
+
+    @Override
+    public synchronized Session logIn(String login, String password, SessionTable sessions) {
+        User user = users.get(login);
+        if (user == null || !user.password.equals(password)) return null;
+        return sessions.open(user.id, login, user.admin);
+    }
+
+    @Override
+    public boolean signUp(String login, String password) throws StoreException {
+        long record;
+        synchronized (this) {
+            if (users.containsKey(login)) return false;
+            User user = new User(nextUserId, login, password, false);
+            BinaryWriter out = record(USER);
+            out.writeLong(user.id).writeString(user.login).writeString(user.password).writeBoolean(user.admin);
+            record = append(out);
+            users.put(login, user);
+            nextUserId++;
+        }
+        sync(record);
+        return true;
+    }
+
+    @Override
+    public long add(Person person, Session session) throws StoreException {
+        long record, id;
+        synchronized (this) {
+            id = nextPersonId;
+            Person stored = stored(id, person, session);
+            record = append(put(stored));
+            people.put(id, stored);
+            nextPersonId++;
+        }
+        sync(record);
+        return id;
+    }
+
+    @Override
+    public void addAll(List<Person> added, Session session) throws StoreException {
+        if (added.isEmpty()) return;
+        long record = 0, id;
+        synchronized (this) {
+            id = nextPersonId;
+            for (Person person : added) {
+                Person stored = stored(nextPersonId, person, session);
+                record = append(put(stored));
+                people.put(nextPersonId++, stored);
+            }
+        }
+        sync(record);
+        for (Person person : added) person.setId(id++);
+    }
+
+    private static Person stored(long id, Person person, Session session) {
+        Person stored = new Person(id, person.getName(), person.getCoordinates(), person.getHeight(), person.getPassportID(),
+                person.getEyeColor(), person.getNationality(), person.getLocation(), session.getLogin());
+        stored.setCreationDate(person.getCreationDate());
+        return stored;
+    }
+
+    @Override
+    public boolean update(long id, Person person, Session session) throws StoreException {
+        long record;
+        synchronized (this) {
+            Person existing = people.get(id);
+            if (!permitted(existing, session)) return false;
+            Person updated = existing.updated(person);
+            record = append(put(updated));
+            people.put(id, updated);
+        }
+        sync(record);
+        return true;
+    }
+
+    @Override
+    public boolean removeById(long id, Session session) throws StoreException {
+        long record;
+        synchronized (this) {
+            if (!permitted(people.get(id), session)) return false;
+            record = append(record(DELETE).writeLong(id));
+            people.remove(id);
+        }
+        sync(record);
+        return true;
+    }
+
+    @Override
+    public void removeByOwner(Session session) throws StoreException {
+        long record;
+        synchronized (this) {
+            String owner = session.getLogin();
+            record = append(record(DELETE_OWNER).writeString(owner));
+            people.values().removeIf(person -> owner.equals(person.getOwner()));
+        }
+        sync(record);
+    }
+
+    private static boolean permitted(Person person, Session session) {
+        return person != null && (session.isAdmin() || session.getLogin().equals(person.getOwner()));
+    }
+
+    private static BinaryWriter record(byte type) {
+        BinaryWriter out = BinaryWriter.growable(256);
+        out.writeInt(0).writeInt(0).writeByte(type);
+        return out;
+    }
+
+    private static BinaryWriter put(Person person) {
+        BinaryWriter out = record(PUT);
+        DataCodec.writePerson(out, person);
+        return out;
+    }
+
+    /**
+     * Дописывает запись в текущий сегмент без записи на диск, вызывается под блокировкой хранилища
+     *
+     * @return Номер записи для {@link #sync(long)}
+     */
+    private long append(BinaryWriter out) throws StoreException {
+        ByteBuffer buffer = frame(out);
+        try {
+            if (segment.position() > 0 && segment.position() + buffer.remaining() > segmentSize) roll();
+            while (buffer.hasRemaining()) segment.write(buffer);
+        } catch (IOException e) {
+            throw new StoreException("Не удалось дописать запись в журнал хранилища: " + e.getMessage(), e);
+        }
+        return ++appended;
+    }
+
+    /**
+     * Записывает текущий сегмент на диск и начинает следующий, вызывается под блокировкой хранилища
+     */
+    private void roll() throws IOException {
+        // Сегмент записывается на диск до создания следующего, поэтому оборванным может быть только последний сегмент
+        segment.force(false);
+        FileChannel next = FileChannel.open(segmentPath(segmentNumber + 1), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        forceDirectory();
+        segment.close();
+        synced = appended;
+        segment = next;
+        segmentNumber++;
+    }
+
+    /**
+     * Записывает на диск каталог журнала, чтобы созданные, замененные и удаленные сегменты пережили сбой.
+     * Если платформа не позволяет открыть каталог как файл, ошибка только записывается в журнал
+     */
+    private void forceDirectory() {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            logger.fine("Не удалось записать на диск каталог журнала: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Ждет записи на диск записи с заданным номером. Первый ожидающий поток записывает на диск все дописанные
+     * к этому моменту записи, остальные потоки ждут его и, как правило, уже не выполняют собственный fsync
+     */
+    private void sync(long record) throws StoreException {
+        synchronized (syncLock) {
+            FileChannel channel;
+            long target;
+            synchronized (this) {
+                if (synced >= record) return;
+                channel = segment;
+                target = appended;
+            }
+            try {
+                channel.force(false);
+            } catch (ClosedChannelException e) {
+                // Сегмент закрыт при переходе к следующему и уже записан на диск
+            } catch (IOException e) {
+                throw new StoreException("Не удалось записать журнал хранилища на диск: " + e.getMessage(), e);
+            }
+            synchronized (this) {
+                synced = Math.max(synced, target);
+                syncs++;
+            }
+        }
+    }
+
+    /**
+     * Сжимает закрытые сегменты: текущий сегмент закрывается, состояние на этот момент записывается во временный файл,
+     * который атомарно заменяет последний закрытый сегмент, после чего более ранние сегменты удаляются
+     */
+    public void compact() {
+        long start = System.nanoTime();
+        int sealed;
+        long nextUser, nextPerson;
+        List<User> userList;
+        List<Person> personList;
+        synchronized (this) {
+            if (segment == null || !segment.isOpen() || appended == compacted) return;
+            try {
+                roll();
+            } catch (IOException e) {
+                logger.warning("Не удалось начать новый сегмент журнала для сжатия: " + e.getMessage());
+                return;
+            }
+            compacted = appended;
+            sealed = segmentNumber - 1;
+            nextUser = nextUserId;
+            nextPerson = nextPersonId;
+            userList = new ArrayList<>(users.values());
+            personList = new ArrayList<>(people.values());
+        }
+        Path target = segmentPath(sealed), temp = dir.resolve(target.getFileName() + TEMP_SUFFIX);
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                write(channel, record(RESET).writeLong(nextUser).writeLong(nextPerson));
+                for (User user : userList)
+                    write(channel, record(USER).writeLong(user.id).writeString(user.login)
+                            .writeString(user.password).writeBoolean(user.admin));
+                for (Person person : personList) write(channel, put(person));
+                channel.force(true);
+            }
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            // Замена должна попасть на диск раньше удаления сегментов, иначе после сбоя журнал может оказаться пустым
+            forceDirectory();
+            int removed = 0;
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+                for (Iterator<Path> iterator = files.iterator(); iterator.hasNext(); ) {
+                    Path file = iterator.next();
+                    String name = file.getFileName().toString();
+                    int number = Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+                    if (number < sealed) {
+                        Files.delete(file);
+                        removed++;
+                    }
+                }
+            }
+            forceDirectory();
+            logger.info(String.format("Журнал хранилища сжат за %d мс: удалено сегментов %d, размер сжатого сегмента %d байт",
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), removed, Files.size(target)));
+        } catch (IOException | NumberFormatException e) {
+            logger.warning("Не удалось сжать журнал хранилища: " + e.getMessage());
+        }
+    }
+
+    private static void write(FileChannel channel, BinaryWriter out) throws IOException {
+        ByteBuffer buffer = frame(out);
+        while (buffer.hasRemaining()) channel.write(buffer);
+    }
+
+    /**
+     * Заполняет длину и контрольную сумму записи
+     *
+     * @return Буфер, готовый к чтению записи
+     */
+    private static ByteBuffer frame(BinaryWriter out) {
+        ByteBuffer buffer = out.getBuffer();
+        int length = buffer.position() - 8;
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), buffer.arrayOffset() + 8, length);
+        buffer.putInt(0, length).putInt(4, (int) crc.getValue());
+        buffer.flip();
+        return buffer;
+    }
+
+    private Path segmentPath(int number) {
+        return dir.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+    }
+
+    public synchronized String metrics() {
+        return String.format("сегмент %d, записей %d, синхронизаций с диском %d, пользователей %d, людей %d",
+                segmentNumber, appended, syncs, users.size(), people.size());
+    }
+
+    /**
+     * Останавливает сжатие и записывает текущий сегмент на диск
+     */
+    @Override
+    public void close() {
+        if (compactor != null) compactor.shutdownNow();
+        synchronized (this) {
+            if (segment == null || !segment.isOpen()) return;
+            try {
+                segment.force(false);
+                segment.close();
+            } catch (IOException e) {
+                logger.warning("Не удалось закрыть журнал хранилища: " + e.getMessage());
+            }
+        }
+    }
+}